@@ -2,7 +2,25 @@
 #export PV_DEFAULT_TYPE=ca
 #export PV_THROTTLE_MS=1000
 #export PV_ARRAY_THROTTLE_MS=10000
+#export PV_THROTTLE_MIN_MS=100
+#export PV_THROTTLE_MAX_MS=60000
+#export PV_TICK_MS=50
+#export PV_TICK_THREADS=4
+#export PV_DEADBAND="*:TEMP*=0.1 *:VAC*=2%,precision"
+#export PV_HISTORY="*:TEMP*=3600"
+#export PV_LINGER_MS=10000
+#export PV_LINGER_MAX=1000
+#export PV_CLIENT_THROTTLE_MAX_MS=10000
+#export PV_CLIENT_LATENCY_MS=100
+#export PV_CLIENT_QUEUE_MS=1000
 #export PV_WRITE_SUPPORT=false
+#export PV_SENDER=thread
+#export PV_QUEUE_BYTES=268435456
+#export PV_START_LIMIT=1000
+#export PV_START_TIMEOUT_MS=5000
+#export PV_START_BATCH=100
+#export PV_BATCH_MS=100
+#export PV_BATCH_BYTES=65536
 
 # Channel Access Settings
 #export EPICS_CA_ADDR_LIST=localhost
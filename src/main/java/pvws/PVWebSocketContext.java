@@ -25,6 +25,7 @@ import org.phoebus.pv.PVPool;
 import org.phoebus.pv.RefCountMap.ReferencedEntry;
 
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 
 import pvws.ws.WebSocket;
 
@@ -41,6 +42,9 @@ public class PVWebSocketContext implements ServletContextListener
     /** Shared JSON factory */
     public static final JsonFactory json_factory = new JsonFactory();
 
+    /** Shared CBOR factory */
+    public static final CBORFactory cbor_factory = new CBORFactory();
+
     private static final Set<WebSocket> sockets = Collections.newSetFromMap(new ConcurrentHashMap<WebSocket, Boolean>());
 
     /** Context start time */
@@ -68,7 +72,25 @@ public class PVWebSocketContext implements ServletContextListener
                                "PV_DEFAULT_TYPE",
                                "PV_THROTTLE_MS",
                                "PV_ARRAY_THROTTLE_MS",
+                               "PV_THROTTLE_MIN_MS",
+                               "PV_THROTTLE_MAX_MS",
+                               "PV_TICK_MS",
+                               "PV_TICK_THREADS",
+                               "PV_DEADBAND",
+                               "PV_HISTORY",
+                               "PV_LINGER_MS",
+                               "PV_LINGER_MAX",
+                               "PV_CLIENT_THROTTLE_MAX_MS",
+                               "PV_CLIENT_LATENCY_MS",
+                               "PV_CLIENT_QUEUE_MS",
                                "PV_WRITE_SUPPORT",
+                               "PV_SENDER",
+                               "PV_BATCH_MS",
+                               "PV_BATCH_BYTES",
+                               "PV_QUEUE_BYTES",
+                               "PV_START_LIMIT",
+                               "PV_START_TIMEOUT_MS",
+                               "PV_START_BATCH",
                                "EPICS_CA_ADDR_LIST",
                                "EPICS_CA_AUTO_ADDR_LIST",
                                "EPICS_CA_MAX_ARRAY_BYTES",
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2019-2020 UT-Battelle, LLC.
+ * Copyright (c) 2019-2026 UT-Battelle, LLC.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the LICENSE
  * which accompanies this distribution
@@ -17,18 +17,34 @@ import org.phoebus.pv.RefCountMap.ReferencedEntry;
 
 import com.fasterxml.jackson.core.JsonGenerator;
 
+import pvws.ws.PVHub;
+
 /** Servlet to list PV Pool entries
  *  @author Kay Kasemir
  */
-@WebServlet("/pool")
+@WebServlet("/pool/*")
 public class PoolServlet extends JSONServlet
 {
 	private static final long serialVersionUID = 1L;
 
-	/** GET /pool : Return info PVs in pool */
+	/** GET /pool : Return info PVs in pool
+	 *
+	 *  <p>Use /pool/linger to get info about lingering PVs.
+	 */
 	@Override
     protected void writeJson(final HttpServletRequest request, final JsonGenerator g) throws IOException
 	{
+        if ("/linger".equals(request.getPathInfo()))
+        {
+            g.writeStartObject();
+            g.writeNumberField("linger_ms", PVHub.getLingerTime());
+            g.writeNumberField("linger_max", PVHub.getLingerLimit());
+            g.writeNumberField("lingering", PVHub.getLingeringCount());
+            g.writeNumberField("hits", PVHub.getLingerHits());
+            g.writeNumberField("misses", PVHub.getLingerMisses());
+            g.writeEndObject();
+            return;
+        }
         g.writeStartArray();
         for (final ReferencedEntry<PV> ref : PVPool.getPVReferences())
         {
@@ -56,6 +56,16 @@ public class SocketServlet extends JSONServlet
             g.writeNumberField("last_client_message", socket.getLastClientMessage());
             g.writeNumberField("last_message_sent", socket.getLastMessageSent());
             g.writeNumberField("queued", socket.getQueuedMessageCount());
+            final int[] depths = socket.getQueueDepths();
+            g.writeObjectFieldStart("lanes");
+            g.writeNumberField("control", depths[0]);
+            g.writeNumberField("scalar", depths[1]);
+            g.writeNumberField("array", depths[2]);
+            g.writeEndObject();
+            g.writeNumberField("queued_bytes", socket.getQueuedBytes());
+            g.writeNumberField("starting", socket.getStartingPVCount());
+            g.writeNumberField("throttle_ms", socket.getThrottle());
+            g.writeNumberField("send_ms", Math.round(socket.getSendLatency() * 10) / 10.0);
 
             g.writeArrayFieldStart("pvs");
             for (final WebSocketPV pv : socket.getPVs())
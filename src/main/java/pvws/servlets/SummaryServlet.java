@@ -34,6 +34,11 @@ public class SummaryServlet extends JSONServlet
     protected void writeJson(final HttpServletRequest request, final JsonGenerator g) throws IOException
 	{
         g.writeStartObject();
+        g.writeNumberField("queued_bytes", WebSocket.getTotalQueuedBytes());
+        g.writeNumberField("queue_budget", WebSocket.getQueueByteBudget());
+        g.writeNumberField("starting", WebSocket.getTotalStartingPVCount());
+        g.writeNumberField("connecting", WebSocket.getTotalConnectingPVCount());
+        g.writeNumberField("scheduled", WebSocket.getTotalScheduledUpdateCount());
         g.writeArrayFieldStart("sockets");
         for (final WebSocket socket : PVWebSocketContext.getSockets())
         {
@@ -44,6 +49,10 @@ public class SummaryServlet extends JSONServlet
             g.writeNumberField("last_client_message", socket.getLastClientMessage());
             g.writeNumberField("last_message_sent", socket.getLastMessageSent());
             g.writeNumberField("queued", socket.getQueuedMessageCount());
+            g.writeNumberField("queued_bytes", socket.getQueuedBytes());
+            g.writeNumberField("starting", socket.getStartingPVCount());
+            g.writeNumberField("throttle_ms", socket.getThrottle());
+            g.writeNumberField("send_ms", Math.round(socket.getSendLatency() * 10) / 10.0);
 
             int pvs = 0, arrays = 0, max_size = 0;
             for (final WebSocketPV pv : socket.getPVs())
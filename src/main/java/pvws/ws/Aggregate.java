@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+/** Statistics of a numeric PV over one throttle period
+ *
+ *  <p>In 'aggregate' mode, the {@link SharedPV} accumulates
+ *  all received values, not only the latest one,
+ *  and each update includes the minimum, maximum, mean and count
+ *  of the values received since the previous update.
+ *  Only finite values are counted.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public final class Aggregate
+{
+    private static final SerializedString STATS = new SerializedString("stats"),
+                                          MIN = new SerializedString("min"),
+                                          MAX = new SerializedString("max"),
+                                          MEAN = new SerializedString("mean"),
+                                          COUNT = new SerializedString("count");
+
+    /** Accumulates statistics without allocating memory for each value */
+    static final class Accumulator
+    {
+        private double min, max, sum;
+        private int count = 0;
+
+        /** @param value Value to add */
+        synchronized void add(final double value)
+        {
+            if (! Double.isFinite(value))
+                return;
+            if (count == 0)
+                min = max = value;
+            else if (value < min)
+                min = value;
+            else if (value > max)
+                max = value;
+            sum += value;
+            ++count;
+        }
+
+        /** Get statistics and reset
+         *  @return Statistics of values added since the last call, <code>null</code> if none
+         */
+        synchronized Aggregate take()
+        {
+            if (count == 0)
+                return null;
+            final Aggregate result = new Aggregate(min, max, sum / count, count);
+            sum = 0.0;
+            count = 0;
+            return result;
+        }
+    }
+
+    private final double min, max, mean;
+    private final int count;
+
+    private Aggregate(final double min, final double max, final double mean, final int count)
+    {
+        this.min = min;
+        this.max = max;
+        this.mean = mean;
+        this.count = count;
+    }
+
+    /** @param earlier Statistics of an earlier period
+     *  @param later Statistics of the following period
+     *  @return Statistics of both periods
+     */
+    static Aggregate merge(final Aggregate earlier, final Aggregate later)
+    {
+        final int count = earlier.count + later.count;
+        return new Aggregate(Math.min(earlier.min, later.min),
+                             Math.max(earlier.max, later.max),
+                             (earlier.mean * earlier.count + later.mean * later.count) / count,
+                             count);
+    }
+
+    /** Write statistics as "stats" object
+     *  @param g {@link JsonGenerator}
+     *  @throws Exception on error
+     */
+    void write(final JsonGenerator g) throws Exception
+    {
+        g.writeFieldName(STATS);
+        g.writeStartObject();
+        g.writeFieldName(MIN);
+        g.writeNumber(min);
+        g.writeFieldName(MAX);
+        g.writeNumber(max);
+        g.writeFieldName(MEAN);
+        g.writeNumber(mean);
+        g.writeFieldName(COUNT);
+        g.writeNumber(count);
+        g.writeEndObject();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "min " + min + ", max " + max + ", mean " + mean + ", count " + count;
+    }
+}
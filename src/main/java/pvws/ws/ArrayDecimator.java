@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import org.epics.util.array.ArrayByte;
+import org.epics.util.array.ArrayDouble;
+import org.epics.util.array.ArrayFloat;
+import org.epics.util.array.ArrayInteger;
+import org.epics.util.array.ArrayLong;
+import org.epics.util.array.ArrayShort;
+import org.epics.util.array.ArrayUByte;
+import org.epics.util.array.ArrayUInteger;
+import org.epics.util.array.ArrayULong;
+import org.epics.util.array.ArrayUShort;
+import org.epics.util.array.ListByte;
+import org.epics.util.array.ListFloat;
+import org.epics.util.array.ListInteger;
+import org.epics.util.array.ListLong;
+import org.epics.util.array.ListNumber;
+import org.epics.util.array.ListShort;
+import org.epics.util.array.ListUByte;
+import org.epics.util.array.ListUInteger;
+import org.epics.util.array.ListULong;
+import org.epics.util.array.ListUShort;
+import org.epics.vtype.VNumberArray;
+
+/** Decimate array into min/max envelope
+ *
+ *  <p>The array is divided into bins,
+ *  and each bin is represented by its minimum and maximum
+ *  in the order in which they occur.
+ *  Plotting the result as a line thus still shows every spike.
+ *
+ *  @author Kay Kasemir
+ */
+final class ArrayDecimator
+{
+    private ArrayDecimator()
+    {
+        // Static helpers
+    }
+
+    /** @param value Array value
+     *  @param max_points Maximum number of points to keep
+     *  @return Decimated array of the same element type with same alarm, time and display,
+     *          or <code>null</code> when array is already small enough
+     */
+    static VNumberArray decimate(final VNumberArray value, final int max_points)
+    {
+        final ListNumber data = value.getData();
+        final int N = data.size();
+        if (max_points < 2  ||  N <= max_points)
+            return null;
+
+        final int bins = max_points / 2;
+        // Indices of the min and max of each bin, in the order in which they occur
+        final int[] indices = new int[2 * bins];
+        for (int bin=0; bin<bins; ++bin)
+        {
+            final int start = (int) ((long) bin * N / bins),
+                      end   = (int) ((long) (bin+1) * N / bins);
+            double min = Double.NaN, max = Double.NaN;
+            int min_idx = start, max_idx = start;
+            for (int i=start; i<end; ++i)
+            {
+                final double v = data.getDouble(i);
+                // Skip NaN, unless the whole bin is NaN
+                if (Double.isNaN(v))
+                    continue;
+                if (Double.isNaN(min)  ||  v < min)
+                {
+                    min = v;
+                    min_idx = i;
+                }
+                if (Double.isNaN(max)  ||  v > max)
+                {
+                    max = v;
+                    max_idx = i;
+                }
+            }
+            indices[2*bin] = Math.min(min_idx, max_idx);
+            indices[2*bin+1] = Math.max(min_idx, max_idx);
+        }
+        return VNumberArray.of(select(data, indices), value.getAlarm(), value.getTime(), value.getDisplay());
+    }
+
+    /** @param data Array elements
+     *  @param indices Indices of elements to select
+     *  @return Selected elements, same element type as the data
+     */
+    private static ListNumber select(final ListNumber data, final int[] indices)
+    {
+        final int N = indices.length;
+        if (data instanceof ListFloat)
+        {
+            final float[] result = new float[N];
+            for (int i=0; i<N; ++i)
+                result[i] = data.getFloat(indices[i]);
+            return ArrayFloat.of(result);
+        }
+        if (data instanceof ListLong  ||  data instanceof ListULong)
+        {
+            final long[] result = new long[N];
+            for (int i=0; i<N; ++i)
+                result[i] = data.getLong(indices[i]);
+            return data instanceof ListULong ? ArrayULong.of(result) : ArrayLong.of(result);
+        }
+        if (data instanceof ListInteger  ||  data instanceof ListUInteger)
+        {
+            final int[] result = new int[N];
+            for (int i=0; i<N; ++i)
+                result[i] = data.getInt(indices[i]);
+            return data instanceof ListUInteger ? ArrayUInteger.of(result) : ArrayInteger.of(result);
+        }
+        if (data instanceof ListShort  ||  data instanceof ListUShort)
+        {
+            final short[] result = new short[N];
+            for (int i=0; i<N; ++i)
+                result[i] = data.getShort(indices[i]);
+            return data instanceof ListUShort ? ArrayUShort.of(result) : ArrayShort.of(result);
+        }
+        if (data instanceof ListByte  ||  data instanceof ListUByte)
+        {
+            final byte[] result = new byte[N];
+            for (int i=0; i<N; ++i)
+                result[i] = data.getByte(indices[i]);
+            return data instanceof ListUByte ? ArrayUByte.of(result) : ArrayByte.of(result);
+        }
+        // ListDouble and any other type
+        final double[] result = new double[N];
+        for (int i=0; i<N; ++i)
+            result[i] = data.getDouble(indices[i]);
+        return ArrayDouble.of(result);
+    }
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import java.util.Arrays;
+
+import org.epics.util.array.ListNumber;
+
+/** Locate the changed elements between two array values
+ *
+ *  <p>Changes are described as ranges of start index and element count,
+ *  <code>[ start0, count0, start1, count1, ... ]</code>.
+ *  Short gaps of unchanged elements are merged into the surrounding ranges
+ *  when that is cheaper than describing another range.
+ *
+ *  @author Kay Kasemir
+ */
+final class ArrayDelta
+{
+    /** Bytes needed to describe one range, start and count as int32 */
+    static final int RANGE_BYTES = 2 * Integer.BYTES;
+
+    private ArrayDelta()
+    {
+        // Static helpers
+    }
+
+    /** @param old Previous array elements
+     *  @param data Current array elements
+     *  @param type Element type, one of the {@link Vtype2Binary} TYPE_* constants
+     *  @return Ranges of changed elements, <code>null</code> if sending the complete array is cheaper
+     */
+    static int[] compute(final ListNumber old, final ListNumber data, final byte type)
+    {
+        final int N = data.size();
+        if (old == null  ||  old.size() != N)
+            return null;
+
+        final int element_size = ArrayPacker.getElementSize(type);
+        final int full_bytes = N * element_size;
+        // Merge ranges separated by fewer unchanged elements than a range description
+        final int max_gap = Math.max(1, RANGE_BYTES / element_size);
+
+        int[] ranges = new int[8];
+        int range_count = 0, changed = 0;
+        int next = nextChange(old, data, type, 0, N);
+        while (next < N)
+        {
+            final int start = next;
+            int end = start + 1;
+            while (true)
+            {
+                // Extend over consecutive changes
+                while (end < N  &&  !isEqual(old, data, type, end))
+                    ++end;
+                next = nextChange(old, data, type, end, N);
+                // Include short gap of unchanged elements?
+                if (next < N  &&  next - end <= max_gap)
+                    end = next + 1;
+                else
+                    break;
+            }
+
+            if (range_count + 2 > ranges.length)
+                ranges = Arrays.copyOf(ranges, ranges.length * 2);
+            ranges[range_count++] = start;
+            ranges[range_count++] = end - start;
+            changed += end - start;
+
+            // Give up when the delta is no longer smaller than the full array
+            if ((range_count / 2) * RANGE_BYTES + changed * element_size >= full_bytes)
+                return null;
+        }
+        return Arrays.copyOf(ranges, range_count);
+    }
+
+    /** @param ranges Ranges of changed elements
+     *  @return Number of elements in all ranges
+     */
+    static int countElements(final int[] ranges)
+    {
+        int count = 0;
+        for (int i=1; i<ranges.length; i+=2)
+            count += ranges[i];
+        return count;
+    }
+
+    /** @return Index of next changed element at or after 'from', N if none */
+    private static int nextChange(final ListNumber old, final ListNumber data,
+                                  final byte type, final int from, final int N)
+    {
+        for (int i=from; i<N; ++i)
+            if (! isEqual(old, data, type, i))
+                return i;
+        return N;
+    }
+
+    /** @return Are elements at index i equal? Compares floating point bits, so NaN equals NaN */
+    private static boolean isEqual(final ListNumber old, final ListNumber data, final byte type, final int i)
+    {
+        return switch (type)
+        {
+            case Vtype2Binary.TYPE_DOUBLE -> Double.doubleToLongBits(old.getDouble(i)) == Double.doubleToLongBits(data.getDouble(i));
+            case Vtype2Binary.TYPE_FLOAT  -> Float.floatToIntBits(old.getFloat(i)) == Float.floatToIntBits(data.getFloat(i));
+            case Vtype2Binary.TYPE_SHORT  -> old.getShort(i) == data.getShort(i);
+            case Vtype2Binary.TYPE_INT    -> old.getInt(i) == data.getInt(i);
+            case Vtype2Binary.TYPE_LONG   -> old.getLong(i) == data.getLong(i);
+            default                       -> old.getByte(i) == data.getByte(i);
+        };
+    }
+}
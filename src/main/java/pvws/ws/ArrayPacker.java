@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+
+import org.epics.util.array.ListNumber;
+
+/** Pack array elements into little-endian bytes
+ *
+ *  <p>Elements are read with the typed getters of the {@link ListNumber}.
+ *  The released epics-util does not expose the primitive array behind
+ *  for example an ArrayDouble, only a copy via toArray(),
+ *  and copying that first is slower for large arrays,
+ *  see ArrayPackerBenchmark.
+ *
+ *  @author Kay Kasemir
+ */
+final class ArrayPacker
+{
+    private ArrayPacker()
+    {
+        // Static helpers
+    }
+
+    /** @param type Element type, one of the {@link Vtype2Binary} TYPE_* constants
+     *  @return Bytes per element
+     */
+    static int getElementSize(final byte type)
+    {
+        return switch (type)
+        {
+            case Vtype2Binary.TYPE_DOUBLE -> Double.BYTES;
+            case Vtype2Binary.TYPE_FLOAT  -> Float.BYTES;
+            case Vtype2Binary.TYPE_SHORT  -> Short.BYTES;
+            case Vtype2Binary.TYPE_INT    -> Integer.BYTES;
+            case Vtype2Binary.TYPE_LONG   -> Long.BYTES;
+            default                       -> Byte.BYTES;
+        };
+    }
+
+    /** @param data Array elements
+     *  @param type Element type, one of the {@link Vtype2Binary} TYPE_* constants
+     *  @return Little-endian bytes
+     */
+    static byte[] toBytes(final ListNumber data, final byte type)
+    {
+        final ByteBuffer buf = ByteBuffer.allocate(data.size() * getElementSize(type));
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        put(buf, data, type);
+        return buf.array();
+    }
+
+    /** @param data Array elements
+     *  @param type Element type, one of the {@link Vtype2Binary} TYPE_* constants
+     *  @param ranges Ranges of elements to pack, see {@link ArrayDelta}
+     *  @return Little-endian bytes of the elements in all ranges
+     */
+    static byte[] toBytes(final ListNumber data, final byte type, final int[] ranges)
+    {
+        final ByteBuffer buf = ByteBuffer.allocate(ArrayDelta.countElements(ranges) * getElementSize(type));
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        put(buf, data, type, ranges);
+        return buf.array();
+    }
+
+    /** Put array elements into buffer
+     *
+     *  @param buf Little-endian buffer, must have room for all elements.
+     *             Position is advanced past the elements.
+     *  @param data Array elements
+     *  @param type Element type, one of the {@link Vtype2Binary} TYPE_* constants
+     */
+    static void put(final ByteBuffer buf, final ListNumber data, final byte type)
+    {
+        put(buf, data, type, 0, data.size());
+    }
+
+    /** Put ranges of array elements into buffer
+     *
+     *  @param buf Little-endian buffer, must have room for the elements.
+     *             Position is advanced past the elements.
+     *  @param data Array elements
+     *  @param type Element type, one of the {@link Vtype2Binary} TYPE_* constants
+     *  @param ranges Ranges of elements to put, see {@link ArrayDelta}
+     */
+    static void put(final ByteBuffer buf, final ListNumber data, final byte type, final int[] ranges)
+    {
+        for (int i=0; i<ranges.length; i+=2)
+            put(buf, data, type, ranges[i], ranges[i+1]);
+    }
+
+    /** Put array elements into buffer
+     *
+     *  @param buf Little-endian buffer, must have room for the elements.
+     *             Position is advanced past the elements.
+     *  @param data Array elements
+     *  @param type Element type, one of the {@link Vtype2Binary} TYPE_* constants
+     *  @param start Index of first element to put
+     *  @param N Number of elements to put
+     */
+    private static void put(final ByteBuffer buf, final ListNumber data, final byte type, final int start, final int N)
+    {
+        final int end = start + N;
+        switch (type)
+        {
+        case Vtype2Binary.TYPE_DOUBLE:
+        {
+            final DoubleBuffer view = buf.asDoubleBuffer();
+            for (int i=start; i<end; ++i)
+                view.put(data.getDouble(i));
+            break;
+        }
+        case Vtype2Binary.TYPE_FLOAT:
+        {
+            final FloatBuffer view = buf.asFloatBuffer();
+            for (int i=start; i<end; ++i)
+                view.put(data.getFloat(i));
+            break;
+        }
+        case Vtype2Binary.TYPE_SHORT:
+        {
+            final ShortBuffer view = buf.asShortBuffer();
+            for (int i=start; i<end; ++i)
+                view.put(data.getShort(i));
+            break;
+        }
+        case Vtype2Binary.TYPE_INT:
+        {
+            final IntBuffer view = buf.asIntBuffer();
+            for (int i=start; i<end; ++i)
+                view.put(data.getInt(i));
+            break;
+        }
+        case Vtype2Binary.TYPE_LONG:
+        {
+            final LongBuffer view = buf.asLongBuffer();
+            for (int i=start; i<end; ++i)
+                view.put(data.getLong(i));
+            break;
+        }
+        default:
+        {
+            for (int i=start; i<end; ++i)
+                buf.put(data.getByte(i));
+            // buf.put() already advanced the position
+            return;
+        }
+        }
+        // Views have their own position, advance the buffer
+        buf.position(buf.position() + N * getElementSize(type));
+    }
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import static pvws.PVWebSocketContext.logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import pvws.PVWebSocketContext;
+
+/** Bytes of outbound messages of one {@link WebSocket}
+ *
+ *  <p>Tracks the size of queued messages and of the message that is being sent,
+ *  per socket and for all sockets.
+ *  The server-wide budget PV_QUEUE_BYTES is shared by all sockets,
+ *  but each socket's share leaves room for two of its largest messages.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+final class ByteBudget
+{
+    /** Budget for all sockets */
+    static final long TOTAL_BYTES;
+
+    static
+    {
+        final String spec = System.getenv("PV_QUEUE_BYTES");
+        if (spec == null)
+            TOTAL_BYTES = Runtime.getRuntime().maxMemory() / 4;
+        else
+            TOTAL_BYTES = Long.parseLong(spec);
+        logger.log(Level.INFO, "PV_QUEUE_BYTES = " + TOTAL_BYTES);
+    }
+
+    /** Bytes of all sockets */
+    private static final AtomicLong total = new AtomicLong();
+
+    /** Bytes of this socket. SYNC on this */
+    private long bytes = 0;
+
+    /** Bytes of the message being sent. SYNC on this */
+    private long sending = 0;
+
+    /** Size of the largest message. SYNC on this */
+    private long largest = 0;
+
+    /** Has budget been released? SYNC on this */
+    private boolean closed = false;
+
+    /** @return Bytes of all sockets */
+    static long getTotal()
+    {
+        return total.get();
+    }
+
+    /** @return Share of the budget for this socket:
+     *          Equal share of all sockets, but at least the largest message
+     *          plus room for another one, so the share does not shrink below
+     *          what one update needs as more sockets connect
+     */
+    long getShare()
+    {
+        final long equal = TOTAL_BYTES / Math.max(1, PVWebSocketContext.getSockets().size());
+        synchronized (this)
+        {
+            return Math.max(equal, 2 * largest);
+        }
+    }
+
+    /** @return Bytes of this socket */
+    synchronized long get()
+    {
+        return bytes;
+    }
+
+    /** @return Bytes of this socket without the message being sent */
+    synchronized long getQueued()
+    {
+        return bytes - sending;
+    }
+
+    /** @param size Bytes of the message being sent, 0 when done */
+    synchronized void setSending(final long size)
+    {
+        sending = size;
+    }
+
+    /** @param delta Bytes added (positive) or released (negative)
+     *  @return Bytes of this socket
+     */
+    long add(final long delta)
+    {
+        final long result;
+        synchronized (this)
+        {
+            if (closed)
+                return 0;
+            bytes += delta;
+            largest = Math.max(largest, delta);
+            result = bytes;
+        }
+        total.addAndGet(delta);
+        return result;
+    }
+
+    /** @return Does socket use more than its share? */
+    boolean isOverShare()
+    {
+        return get() > getShare();
+    }
+
+    /** Release all bytes, ignore further changes */
+    void close()
+    {
+        final long released;
+        synchronized (this)
+        {
+            closed = true;
+            released = bytes;
+            bytes = 0;
+            sending = 0;
+        }
+        total.addAndGet(-released);
+    }
+}
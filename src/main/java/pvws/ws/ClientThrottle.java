@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import static pvws.PVWebSocketContext.logger;
+
+import java.util.logging.Level;
+
+/** Adaptive throttle of one {@link WebSocket}
+ *
+ *  <p>The {@link SharedPV} throttles updates at PV_THROTTLE_MS
+ *  respectively PV_ARRAY_THROTTLE_MS for all clients.
+ *  Each socket measures how long it takes to send a message
+ *  and how long the oldest queued message or PV update has been waiting.
+ *  Since the outbox holds each PV at most once, its size does not indicate a backlog,
+ *  but its age does.
+ *  When sending is slow or the queue falls behind, the throttle for the socket's PVs
+ *  is doubled, up to PV_CLIENT_THROTTLE_MAX_MS.
+ *  When the client keeps up, it is gradually reduced back to PV_THROTTLE_MS.
+ *  Array PVs and PVs with a requested throttle use the same factor
+ *  relative to their throttle period.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+final class ClientThrottle
+{
+    /** Maximum throttle */
+    static final int MAX_MS;
+
+    /** Send time above which a client is considered slow */
+    static final int LATENCY_MS;
+
+    /** Age of the oldest queued entry above which a client is considered slow */
+    static final int QUEUE_MS;
+
+    /** Minimum period between adjustments */
+    private static final long ADJUST_PERIOD_MS = 1000;
+
+    static
+    {
+        String spec = System.getenv("PV_CLIENT_THROTTLE_MAX_MS");
+        if (spec == null)
+            MAX_MS = 10 * SharedPV.THROTTLE_MS;
+        else
+            MAX_MS = Math.max(SharedPV.THROTTLE_MS, Integer.parseInt(spec));
+
+        spec = System.getenv("PV_CLIENT_LATENCY_MS");
+        if (spec == null)
+            LATENCY_MS = 100;
+        else
+            LATENCY_MS = Integer.parseInt(spec);
+
+        spec = System.getenv("PV_CLIENT_QUEUE_MS");
+        if (spec == null)
+            QUEUE_MS = 1000;
+        else
+            QUEUE_MS = Integer.parseInt(spec);
+
+        logger.log(Level.INFO, "PV_CLIENT_THROTTLE_MAX_MS = " + MAX_MS);
+        logger.log(Level.INFO, "PV_CLIENT_LATENCY_MS = " + LATENCY_MS);
+        logger.log(Level.INFO, "PV_CLIENT_QUEUE_MS = " + QUEUE_MS);
+    }
+
+    /** Current throttle for scalar PVs */
+    private volatile int throttle_ms = SharedPV.THROTTLE_MS;
+
+    /** Average time to send a message, exponentially weighted */
+    private volatile double latency_ms = 0.0;
+
+    /** Time of last adjustment. SYNC on this */
+    private long last_adjust = System.currentTimeMillis();
+
+    /** @return Current throttle for scalar PVs */
+    int getThrottle()
+    {
+        return throttle_ms;
+    }
+
+    /** @param period_ms Throttle period requested for a PV
+     *  @return Current throttle for the PV, scaled by the same factor as the scalar throttle
+     */
+    int getThrottle(final int period_ms)
+    {
+        return (int) ((long) period_ms * throttle_ms / Math.max(1, SharedPV.THROTTLE_MS));
+    }
+
+    /** @return Average time to send a message */
+    double getLatency()
+    {
+        return latency_ms;
+    }
+
+    /** Update throttle after sending a message
+     *  @param nanos Time it took to send the message
+     *  @param queued_ms Time that the oldest queued message or PV update has been waiting
+     *  @param id Socket ID for logging
+     */
+    void messageSent(final long nanos, final long queued_ms, final String id)
+    {
+        messageSent(nanos, queued_ms, id, System.currentTimeMillis());
+    }
+
+    /** Update throttle after sending a message
+     *  @param nanos Time it took to send the message
+     *  @param queued_ms Time that the oldest queued message or PV update has been waiting
+     *  @param id Socket ID for logging
+     *  @param now Current time (ms since epoch)
+     */
+    synchronized void messageSent(final long nanos, final long queued_ms, final String id, final long now)
+    {
+        final double latency = latency_ms + (nanos / 1e6 - latency_ms) / 8;
+        latency_ms = latency;
+
+        if (now - last_adjust < ADJUST_PERIOD_MS)
+            return;
+        last_adjust = now;
+
+        final int ms = throttle_ms;
+        final int new_ms;
+        if (latency > LATENCY_MS  ||  queued_ms > QUEUE_MS)
+            new_ms = (int) Math.min(MAX_MS, 2L * Math.max(1, ms));
+        else if (latency < LATENCY_MS / 2.0  &&  queued_ms <= QUEUE_MS / 2)
+            new_ms = Math.max(SharedPV.THROTTLE_MS, ms - Math.max(1, ms / 4));
+        else
+            return;
+        if (new_ms == ms)
+            return;
+        throttle_ms = new_ms;
+        logger.log(Level.FINE, () -> "Throttle for " + id + " " + ms + " -> " + new_ms +
+                                     " ms (send " + Math.round(latency) + " ms, queued " + queued_ms + " ms)");
+    }
+}
@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import static pvws.PVWebSocketContext.logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+
+import org.epics.vtype.Alarm;
+import org.epics.vtype.VNumber;
+
+/** Deadband for numeric scalar PVs
+ *
+ *  <p>Suppresses updates whose value is within the deadband
+ *  of the last value that was passed on.
+ *  Changes in alarm severity, access rights or metadata always pass,
+ *  as do updates with {@link Aggregate} statistics.
+ *
+ *  <p>Specification is a comma-separated list of
+ *  <ul>
+ *  <li>"0.1": Absolute deadband
+ *  <li>"2%": Relative deadband, percent of the last value
+ *  <li>"precision": Suppress values that are identical at the display precision
+ *  </ul>
+ *  A value passes if it's outside any of the given deadbands.
+ *
+ *  <p>Server-wide deadbands for PV name patterns are configured
+ *  via PV_DEADBAND as a space-separated list of "glob=spec",
+ *  for example "*:TEMP*=0.1 *:VAC*=2%,precision".
+ *  The first matching pattern applies unless the subscription requests a deadband.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+final class Deadband
+{
+    /** Deadband that passes all values */
+    static final Deadband NONE = new Deadband(0.0, 0.0, false);
+
+    /** Server-wide deadbands */
+    private static final List<Pattern> patterns = new ArrayList<>();
+    private static final List<Deadband> pattern_deadbands = new ArrayList<>();
+
+    static
+    {
+        final String spec = System.getenv("PV_DEADBAND");
+        if (spec != null)
+            for (String entry : spec.trim().split("\\s+"))
+            {
+                final int sep = entry.lastIndexOf('=');
+                try
+                {
+                    if (sep <= 0)
+                        throw new Exception("Expected 'glob=spec'");
+                    pattern_deadbands.add(parse(entry.substring(sep+1)));
+                    patterns.add(Pattern.compile(globToRegex(entry.substring(0, sep))));
+                }
+                catch (final Exception ex)
+                {
+                    logger.log(Level.WARNING, "Invalid PV_DEADBAND entry '" + entry + "'", ex);
+                }
+            }
+        logger.log(Level.INFO, "PV_DEADBAND = " + spec);
+    }
+
+    /** Absolute deadband, 0 for none */
+    private final double absolute;
+
+    /** Relative deadband (fraction of last value), 0 for none */
+    private final double relative;
+
+    /** Suppress values that are identical at the display precision? */
+    private final boolean precision;
+
+    private Deadband(final double absolute, final double relative, final boolean precision)
+    {
+        this.absolute = absolute;
+        this.relative = relative;
+        this.precision = precision;
+    }
+
+    /** @param glob PV name pattern with '*' and '?'
+     *  @return Regular expression
+     */
+    static String globToRegex(final String glob)
+    {
+        final StringBuilder regex = new StringBuilder();
+        for (final char c : glob.toCharArray())
+        {
+            if (c == '*')
+                regex.append(".*");
+            else if (c == '?')
+                regex.append('.');
+            else
+                regex.append(Pattern.quote(Character.toString(c)));
+        }
+        return regex.toString();
+    }
+
+    /** @param spec Deadband specification, see class description
+     *  @return {@link Deadband}
+     *  @throws Exception on error
+     */
+    static Deadband parse(final String spec) throws Exception
+    {
+        double absolute = 0.0, relative = 0.0;
+        boolean precision = false;
+        for (String term : spec.split(","))
+        {
+            term = term.trim();
+            if (term.isEmpty()  ||  term.equalsIgnoreCase("none"))
+                continue;
+            if (term.equalsIgnoreCase("precision"))
+                precision = true;
+            else if (term.endsWith("%"))
+                relative = Double.parseDouble(term.substring(0, term.length()-1)) / 100.0;
+            else
+                absolute = Double.parseDouble(term);
+        }
+        if (absolute < 0  ||  relative < 0)
+            throw new Exception("Invalid deadband '" + spec + "'");
+        if (absolute == 0  &&  relative == 0  &&  !precision)
+            return NONE;
+        return new Deadband(absolute, relative, precision);
+    }
+
+    /** @param name PV name
+     *  @return Deadband configured for PV name, {@link #NONE} if none matches
+     */
+    static Deadband forPV(final String name)
+    {
+        for (int i=0; i<patterns.size(); ++i)
+            if (patterns.get(i).matcher(name).matches())
+                return pattern_deadbands.get(i);
+        return NONE;
+    }
+
+    /** @param passed Last update that passed the deadband, may be <code>null</code>
+     *  @param update New update
+     *  @return Should the new update be suppressed?
+     */
+    boolean suppress(final SharedPV.Update passed, final SharedPV.Update update)
+    {
+        if (this == NONE  ||  passed == null  ||  update.aggregate != null)
+            return false;
+        if (! (passed.value instanceof VNumber last)  ||  ! (update.value instanceof VNumber current))
+            return false;
+        if (! Objects.equals(passed.readonly, update.readonly)  ||  passed.metadata != update.metadata)
+            return false;
+        if (Alarm.alarmOf(last).getSeverity() != Alarm.alarmOf(current).getSeverity())
+            return false;
+
+        final double a = last.getValue().doubleValue(), b = current.getValue().doubleValue();
+        if (Double.isNaN(a) != Double.isNaN(b))
+            return false;
+        final double diff = Math.abs(b - a);
+        if (absolute > 0  &&  diff > absolute)
+            return false;
+        if (relative > 0  &&  diff > relative * Math.abs(a))
+            return false;
+        if (precision)
+        {
+            final int digits = update.metadata == null ? -1 : update.metadata.getPrecision();
+            if (digits < 0)
+                return false;
+            final double scale = Math.pow(10, digits);
+            if (Math.rint(a * scale) != Math.rint(b * scale))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString()
+    {
+        if (this == NONE)
+            return "none";
+        final StringBuilder buf = new StringBuilder();
+        if (absolute > 0)
+            buf.append(absolute);
+        if (relative > 0)
+            buf.append(buf.length() > 0 ? "," : "").append(relative * 100).append('%');
+        if (precision)
+            buf.append(buf.length() > 0 ? "," : "").append("precision");
+        return buf.toString();
+    }
+}
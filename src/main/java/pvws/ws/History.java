@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import static pvws.PVWebSocketContext.logger;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+
+import org.epics.vtype.Alarm;
+import org.epics.vtype.Time;
+import org.epics.vtype.VNumber;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+/** Short-term history of a numeric scalar PV
+ *
+ *  <p>Ring buffer of time stamp, value and alarm severity
+ *  for every value received for the PV, kept in primitive arrays.
+ *  The {@link PVHub} keeps one history per PV name,
+ *  shared by the {@link SharedPV}s for different throttles or aggregation,
+ *  which all add the same values.
+ *
+ *  <p>PVs with history are configured via PV_HISTORY
+ *  as a space-separated list of "glob=samples",
+ *  for example "*:TEMP*=3600 *:VAC*=600".
+ *  The first matching pattern determines the number of samples.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+final class History
+{
+    private static final SerializedString B64TIME = new SerializedString("b64time"),
+                                          B64SEV = new SerializedString("b64sev");
+
+    /** Configured patterns and their sizes */
+    private static final List<Pattern> patterns = new ArrayList<>();
+    private static final List<Integer> sizes = new ArrayList<>();
+
+    static
+    {
+        final String spec = System.getenv("PV_HISTORY");
+        if (spec != null)
+            configure(spec);
+        logger.log(Level.INFO, "PV_HISTORY = " + spec);
+    }
+
+    /** @param spec Space-separated list of "glob=samples" to add to the configured patterns */
+    static void configure(final String spec)
+    {
+        for (String entry : spec.trim().split("\\s+"))
+        {
+            final int sep = entry.lastIndexOf('=');
+            try
+            {
+                if (sep <= 0)
+                    throw new Exception("Expected 'glob=samples'");
+                final int size = Integer.parseInt(entry.substring(sep+1));
+                if (size <= 0)
+                    throw new Exception("Invalid number of samples");
+                sizes.add(size);
+                patterns.add(Pattern.compile(Deadband.globToRegex(entry.substring(0, sep))));
+            }
+            catch (final Exception ex)
+            {
+                logger.log(Level.WARNING, "Invalid PV_HISTORY entry '" + entry + "'", ex);
+            }
+        }
+    }
+
+    /** Time stamps (seconds since epoch), values and severity ordinals */
+    private final double[] times, values;
+    private final byte[] severities;
+
+    /** Index for the next sample. SYNC on this */
+    private int next = 0;
+
+    /** Number of valid samples. SYNC on this */
+    private int count = 0;
+
+    /** @param size Number of samples to keep */
+    History(final int size)
+    {
+        times = new double[size];
+        values = new double[size];
+        severities = new byte[size];
+    }
+
+    /** @param name PV name
+     *  @return History for the PV, <code>null</code> if PV has no history
+     */
+    static History forPV(final String name)
+    {
+        for (int i=0; i<patterns.size(); ++i)
+            if (patterns.get(i).matcher(name).matches())
+                return new History(sizes.get(i));
+        return null;
+    }
+
+    /** Add value
+     *
+     *  <p>Values that are not newer than the newest sample are ignored.
+     *  They have already been added by another {@link SharedPV} of the same PV.
+     *
+     *  @param value Value to add
+     */
+    void add(final VNumber value)
+    {
+        final Time time = Time.timeOf(value);
+        final Instant stamp = time == null ? Instant.now() : time.getTimestamp();
+        final double seconds = stamp.getEpochSecond() + stamp.getNano() * 1e-9;
+        final double number = value.getValue().doubleValue();
+        final byte severity = (byte) Alarm.alarmOf(value).getSeverity().ordinal();
+        synchronized (this)
+        {
+            if (count > 0  &&  seconds <= times[index(0)])
+                return;
+            times[next] = seconds;
+            values[next] = number;
+            severities[next] = severity;
+            next = (next + 1) % times.length;
+            if (count < times.length)
+                ++count;
+        }
+    }
+
+    /** Write samples as little-endian "b64time" (double seconds since epoch),
+     *  "b64dbl" (double values) and "b64sev" (byte severity ordinals)
+     *
+     *  @param g {@link JsonGenerator}
+     *  @param seconds Write samples of the last seconds
+     *  @throws Exception on error
+     */
+    void write(final JsonGenerator g, final double seconds) throws Exception
+    {
+        final double start = System.currentTimeMillis() / 1000.0 - seconds;
+        final ByteBuffer time_buf, value_buf;
+        final byte[] severity_buf;
+        synchronized (this)
+        {
+            // Find oldest sample within the time range, going back from the newest
+            int n = 0;
+            while (n < count  &&  times[index(n)] >= start)
+                ++n;
+            time_buf = ByteBuffer.allocate(n * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            value_buf = ByteBuffer.allocate(n * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            severity_buf = new byte[n];
+            for (int i=0; i<n; ++i)
+            {
+                final int s = index(n - 1 - i);
+                time_buf.putDouble(times[s]);
+                value_buf.putDouble(values[s]);
+                severity_buf[i] = severities[s];
+            }
+        }
+        g.writeFieldName(B64TIME);
+        g.writeBinary(time_buf.array());
+        g.writeFieldName(Vtype2Json.B64DBL);
+        g.writeBinary(value_buf.array());
+        g.writeFieldName(B64SEV);
+        g.writeBinary(severity_buf);
+    }
+
+    /** @param back Number of samples before the newest one
+     *  @return Index of that sample
+     */
+    private int index(final int back)
+    {
+        return Math.floorMod(next - 1 - back, times.length);
+    }
+}
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import org.epics.util.array.ArrayByte;
+import org.epics.util.array.ArrayDouble;
+import org.epics.util.array.ArrayFloat;
+import org.epics.util.array.ArrayInteger;
+import org.epics.util.array.ArrayLong;
+import org.epics.util.array.ArrayShort;
+import org.epics.util.array.ListNumber;
+import org.epics.vtype.VImage;
+import org.epics.vtype.VImageDataType;
+import org.epics.vtype.VImageType;
+
+/** View of an image: Region of interest, reduced to a maximum size
+ *
+ *  <p>The region of interest is cropped from the image,
+ *  then binned by an integer factor, averaging the pixels of each bin,
+ *  until it fits the maximum size.
+ *  Supports monochrome and pixel-interleaved RGB images.
+ *
+ *  <p>Views with the same settings are equal,
+ *  so sockets that request the same view share the result.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+final class ImageView
+{
+    /** Region of interest, width and height 0 for the complete image */
+    private final int x, y, width, height;
+
+    /** Maximum size, 0 for no limit */
+    private final int max_width, max_height;
+
+    /** @param x Left edge of region of interest
+     *  @param y Top edge of region of interest
+     *  @param width Width of region of interest, 0 to extend to the right edge
+     *  @param height Height of region of interest, 0 to extend to the bottom edge
+     *  @param max_width Maximum width of the view, 0 for no limit
+     *  @param max_height Maximum height of the view, 0 for no limit
+     */
+    ImageView(final int x, final int y, final int width, final int height,
+              final int max_width, final int max_height)
+    {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.max_width = max_width;
+        this.max_height = max_height;
+    }
+
+    /** A region of interest beyond the edge of the image
+     *  is clipped to the image.
+     *
+     *  @param image Image
+     *  @return View of the image, <code>null</code> if the image is used as is
+     */
+    VImage apply(final VImage image)
+    {
+        final int channels;
+        if (image.getVImageType() == VImageType.TYPE_MONO)
+            channels = 1;
+        else if (image.getVImageType() == VImageType.TYPE_RGB1)
+            channels = 3;
+        else
+            return null;
+
+        // Compute size as long since W * H * channels may overflow int.
+        // Once the size fits the data, pixel indices fit int
+        final int W = image.getWidth(), H = image.getHeight();
+        final ListNumber data = image.getData();
+        if (W <= 0  ||  H <= 0  ||  data.size() < (long) W * H * channels)
+            return null;
+
+        // Clip region of interest to image,
+        // keeping at least the edge pixels when it's outside of the image
+        final int x0 = Math.min(x, W - 1),
+                  y0 = Math.min(y, H - 1);
+        final int w = width  > 0 ? Math.min(width,  W - x0) : W - x0,
+                  h = height > 0 ? Math.min(height, H - y0) : H - y0;
+
+        // Smallest bin size that fits the maximum size
+        int bin = 1;
+        if (max_width > 0)
+            bin = Math.max(bin, (w + max_width - 1) / max_width);
+        if (max_height > 0)
+            bin = Math.max(bin, (h + max_height - 1) / max_height);
+        if (bin == 1  &&  x0 == 0  &&  y0 == 0  &&  w == W  &&  h == H)
+            return null;
+
+        final int out_w = Math.max(1, w / bin),
+                  out_h = Math.max(1, h / bin);
+        final double[] pixels = new double[out_w * out_h * channels];
+        for (int oy=0; oy<out_h; ++oy)
+        {
+            final int sy0 = y0 + oy * bin, sy1 = Math.min(sy0 + bin, y0 + h);
+            for (int ox=0; ox<out_w; ++ox)
+            {
+                final int sx0 = x0 + ox * bin, sx1 = Math.min(sx0 + bin, x0 + w);
+                final int count = (sy1 - sy0) * (sx1 - sx0);
+                for (int c=0; c<channels; ++c)
+                {
+                    // Single pass over the pixels, where getDouble() is faster
+                    // than copying rows out of the ListNumber
+                    double sum = 0;
+                    for (int sy=sy0; sy<sy1; ++sy)
+                        for (int sx=sx0; sx<sx1; ++sx)
+                            sum += data.getDouble((sy * W + sx) * channels + c);
+                    pixels[(oy * out_w + ox) * channels + c] = sum / count;
+                }
+            }
+        }
+        return VImage.of(out_h, out_w, toList(pixels, image.getDataType()),
+                         image.getDataType(), image.getVImageType(),
+                         image.getAlarm(), image.getTime());
+    }
+
+    /** @param pixels Pixel values
+     *  @param type Data type of the image
+     *  @return Pixels as list of that data type
+     */
+    private static ListNumber toList(final double[] pixels, final VImageDataType type)
+    {
+        final int N = pixels.length;
+        switch (type)
+        {
+        case pvDouble:
+            return ArrayDouble.of(pixels);
+        case pvFloat:
+        {
+            final float[] result = new float[N];
+            for (int i=0; i<N; ++i)
+                result[i] = (float) pixels[i];
+            return ArrayFloat.of(result);
+        }
+        case pvLong:
+        case pvULong:
+        {
+            final long[] result = new long[N];
+            for (int i=0; i<N; ++i)
+                result[i] = Math.round(pixels[i]);
+            return ArrayLong.of(result);
+        }
+        case pvInt:
+        case pvUInt:
+        {
+            final int[] result = new int[N];
+            for (int i=0; i<N; ++i)
+                result[i] = (int) Math.round(pixels[i]);
+            return ArrayInteger.of(result);
+        }
+        case pvShort:
+        case pvUShort:
+        {
+            final short[] result = new short[N];
+            for (int i=0; i<N; ++i)
+                result[i] = (short) Math.round(pixels[i]);
+            return ArrayShort.of(result);
+        }
+        default:
+        {
+            final byte[] result = new byte[N];
+            for (int i=0; i<N; ++i)
+                result[i] = (byte) Math.round(pixels[i]);
+            return ArrayByte.of(result);
+        }
+        }
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int result = x;
+        result = 31 * result + y;
+        result = 31 * result + width;
+        result = 31 * result + height;
+        result = 31 * result + max_width;
+        result = 31 * result + max_height;
+        return result;
+    }
+
+    @Override
+    public boolean equals(final Object obj)
+    {
+        return obj instanceof ImageView other  &&
+               x == other.x  &&  y == other.y  &&
+               width == other.width  &&  height == other.height  &&
+               max_width == other.max_width  &&  max_height == other.max_height;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "roi " + x + ", " + y + ", " + width + " x " + height +
+               ", max " + max_width + " x " + max_height;
+    }
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+
+/** Reusable JSON encoder
+ *
+ *  <p>Each thread keeps one {@link JsonGenerator} per {@link MessageFormat}
+ *  that writes into a recycled buffer,
+ *  so encoding a message only allocates the resulting bytes.
+ *  Since each socket's sender may have its own thread,
+ *  a buffer that grew beyond {@link #RETAIN_BYTES} for a large message
+ *  is not kept, so idle threads hold little memory.
+ *
+ *  <pre>
+ *  final JsonEncoder encoder = JsonEncoder.get();
+ *  try
+ *  {
+ *      final JsonGenerator g = encoder.start();
+ *      g.writeStartObject();
+ *      ...
+ *      g.writeEndObject();
+ *      return encoder.finish();
+ *  }
+ *  catch (Exception ex)
+ *  {
+ *      encoder.discard();
+ *      throw ex;
+ *  }
+ *  </pre>
+ *
+ *  @author Kay Kasemir
+ */
+final class JsonEncoder
+{
+    /** Messages larger than this are encoded into a buffer that is then dropped */
+    static final int RETAIN_BYTES = 16 * 1024;
+
+    private static final Map<MessageFormat, ThreadLocal<JsonEncoder>> encoders = new EnumMap<>(MessageFormat.class);
+
+    static
+    {
+        for (MessageFormat format : MessageFormat.values())
+            encoders.put(format, ThreadLocal.withInitial(() -> new JsonEncoder(format)));
+    }
+
+    private final MessageFormat format;
+    private final ByteArrayBuilder buf = new ByteArrayBuilder();
+    private final JsonGenerator g;
+
+    private JsonEncoder(final MessageFormat format)
+    {
+        this.format = format;
+        try
+        {
+            g = format.factory.createGenerator(buf);
+        }
+        catch (final IOException ex)
+        {
+            throw new UncheckedIOException(ex);
+        }
+        // Generator writes one root-level object after the other
+        // into the same buffer, which is reset in between.
+        // Don't separate them.
+        // Binary formats have no separator to begin with.
+        if (format == MessageFormat.JSON)
+            g.setRootValueSeparator(null);
+    }
+
+    /** @return JSON encoder for the calling thread */
+    static JsonEncoder get()
+    {
+        return get(MessageFormat.JSON);
+    }
+
+    /** @param format Message format
+     *  @return Encoder for the calling thread
+     */
+    static JsonEncoder get(final MessageFormat format)
+    {
+        return encoders.get(format).get();
+    }
+
+    /** @return Generator, ready to write one root-level value */
+    JsonGenerator start()
+    {
+        buf.reset();
+        return g;
+    }
+
+    /** @return Bytes of the value written since {@link #start()}, UTF-8 for JSON
+     *  @throws IOException on error
+     */
+    byte[] finish() throws IOException
+    {
+        g.flush();
+        final byte[] result = buf.toByteArray();
+        buf.reset();
+        // Calling thread will get a new encoder with a small buffer next time
+        if (result.length > RETAIN_BYTES)
+            encoders.get(format).remove();
+        return result;
+    }
+
+    /** @return Message for the value written since {@link #start()}
+     *  @throws IOException on error
+     */
+    Message finishMessage() throws IOException
+    {
+        return format.toMessage(finish());
+    }
+
+    /** Discard encoder after error
+     *
+     *  <p>Generator might be in the middle of an object,
+     *  so the calling thread will get a new encoder next time.
+     */
+    void discard()
+    {
+        encoders.get(format).remove();
+    }
+}
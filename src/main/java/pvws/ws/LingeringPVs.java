@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/** Shared PVs that linger after their last subscriber is gone
+ *
+ *  <p>Ordered by time when the PV lost its last subscriber,
+ *  which is also the order of expiration.
+ *  Not thread-safe, the {@link PVHub} synchronizes access.
+ *
+ *  @author Kay Kasemir
+ */
+final class LingeringPVs
+{
+    /** Shared PV without subscribers */
+    private static class Lingering
+    {
+        final SharedPV shared;
+        /** Time (ms since epoch) when PV is released */
+        final long expires;
+
+        Lingering(final SharedPV shared, final long expires)
+        {
+            this.shared = shared;
+            this.expires = expires;
+        }
+    }
+
+    /** Time that PVs linger */
+    private final int linger_ms;
+
+    /** Maximum number of lingering PVs */
+    private final int max;
+
+    /** Map of {@link SharedPV#getKey()} to lingering shared PV */
+    private final LinkedHashMap<String, Lingering> lingering = new LinkedHashMap<>();
+
+    /** @param linger_ms Time that PVs linger, 0 to release them right away
+     *  @param max Maximum number of lingering PVs, 0 to release them right away
+     */
+    LingeringPVs(final int linger_ms, final int max)
+    {
+        this.linger_ms = linger_ms;
+        this.max = max;
+    }
+
+    /** @return Do PVs linger, or are they released right away? */
+    boolean isEnabled()
+    {
+        return linger_ms > 0  &&  max > 0;
+    }
+
+    /** @param shared Shared PV that lost its last subscriber
+     *  @param now Current time (ms since epoch)
+     *  @return Least recently used PV that needs to be released because there are too many, or <code>null</code>
+     */
+    SharedPV add(final SharedPV shared, final long now)
+    {
+        lingering.put(shared.getKey(), new Lingering(shared, now + linger_ms));
+        if (lingering.size() <= max)
+            return null;
+        final Iterator<Lingering> oldest = lingering.values().iterator();
+        final SharedPV release = oldest.next().shared;
+        oldest.remove();
+        return release;
+    }
+
+    /** @param key {@link SharedPV#getKey()}
+     *  @return Lingering PV or <code>null</code>
+     */
+    SharedPV get(final String key)
+    {
+        final Lingering linger = lingering.get(key);
+        return linger == null ? null : linger.shared;
+    }
+
+    /** @param key {@link SharedPV#getKey()}
+     *  @return Lingering PV that was removed, or <code>null</code>
+     */
+    SharedPV remove(final String key)
+    {
+        final Lingering linger = lingering.remove(key);
+        return linger == null ? null : linger.shared;
+    }
+
+    /** @param now Current time (ms since epoch)
+     *  @return Expired PVs that were removed and need to be released
+     */
+    List<SharedPV> removeExpired(final long now)
+    {
+        final List<SharedPV> expired = new ArrayList<>();
+        final Iterator<Lingering> iter = lingering.values().iterator();
+        while (iter.hasNext())
+        {
+            final Lingering linger = iter.next();
+            if (linger.expires > now)
+                break;
+            iter.remove();
+            expired.add(linger.shared);
+        }
+        return expired;
+    }
+
+    /** @return Number of lingering PVs */
+    int size()
+    {
+        return lingering.size();
+    }
+}
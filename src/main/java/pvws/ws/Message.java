@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import javax.websocket.RemoteEndpoint.Async;
+import javax.websocket.RemoteEndpoint.Basic;
+import javax.websocket.SendHandler;
+
+/** Message for a web client, either text or binary
+ *
+ *  <p>Messages are immutable, so the same message
+ *  may be queued on several {@link WebSocket}s.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+final class Message
+{
+    /** UTF-8 bytes of a text message, <code>null</code> for binary message */
+    private final byte[] utf8;
+
+    /** Data of a binary message, <code>null</code> for text message */
+    private final ByteBuffer binary;
+
+    /** Text, decoded on demand when sending text */
+    private String text = null;
+
+    private Message(final byte[] utf8, final ByteBuffer binary)
+    {
+        this.utf8 = utf8;
+        this.binary = binary;
+    }
+
+    /** @param text Text, typically JSON
+     *  @return Text message
+     */
+    static Message text(final String text)
+    {
+        final Message message = new Message(text.getBytes(StandardCharsets.UTF_8), null);
+        message.text = text;
+        return message;
+    }
+
+    /** @param utf8 UTF-8 bytes of text, typically JSON, will not be modified
+     *  @return Text message
+     */
+    static Message text(final byte[] utf8)
+    {
+        return new Message(utf8, null);
+    }
+
+    /** @param binary Binary data, will not be modified
+     *  @return Binary message
+     */
+    static Message binary(final ByteBuffer binary)
+    {
+        return new Message(null, binary.asReadOnlyBuffer());
+    }
+
+    /** @return Size of the message in bytes */
+    int size()
+    {
+        return utf8 != null ? utf8.length : binary.remaining();
+    }
+
+    /** @return Is this a text message? */
+    boolean isText()
+    {
+        return utf8 != null;
+    }
+
+    /** @param out Stream to which the bytes of the message are written */
+    void writeTo(final ByteArrayOutputStream out)
+    {
+        if (utf8 != null)
+            out.write(utf8, 0, utf8.length);
+        else
+        {
+            final ByteBuffer data = binary.duplicate();
+            final byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            out.write(bytes, 0, bytes.length);
+        }
+    }
+
+    /** @return Message as text */
+    private String getText()
+    {
+        // Web socket API only sends text from a String.
+        // Decode once, then share with all sockets that send this message.
+        // Concurrent calls might decode more than once, which is harmless.
+        String safe_text = text;
+        if (safe_text == null)
+        {
+            safe_text = new String(utf8, StandardCharsets.UTF_8);
+            text = safe_text;
+        }
+        return safe_text;
+    }
+
+    /** @param remote Where to send the message
+     *  @throws IOException on error
+     */
+    void send(final Basic remote) throws IOException
+    {
+        if (binary != null)
+            // Each send needs its own position and limit
+            remote.sendBinary(binary.duplicate());
+        else
+            remote.sendText(getText());
+    }
+
+    /** @param remote Where to send the message
+     *  @param handler Notified when the message has been sent
+     */
+    void send(final Async remote, final SendHandler handler)
+    {
+        if (binary != null)
+            remote.sendBinary(binary.duplicate(), handler);
+        else
+            remote.sendText(getText(), handler);
+    }
+
+    @Override
+    public String toString()
+    {
+        if (binary != null)
+            return "Binary message, " + binary.remaining() + " bytes";
+        return getText();
+    }
+}
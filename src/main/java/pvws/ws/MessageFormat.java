@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+import pvws.PVWebSocketContext;
+
+/** Format of the messages sent to a web socket
+ *
+ *  <p>All formats carry the same message schema.
+ *  A client selects a format other than JSON by requesting
+ *  its web socket sub-protocol when opening the connection.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public enum MessageFormat
+{
+    /** JSON text messages */
+    JSON(null, PVWebSocketContext.json_factory),
+
+    /** CBOR (RFC 8949) in binary messages.
+     *  Numbers are sent natively, array elements as byte strings.
+     */
+    CBOR(MessageFormat.CBOR_SUBPROTOCOL, PVWebSocketContext.cbor_factory);
+
+    /** Web socket sub-protocol for {@link #CBOR} */
+    public static final String CBOR_SUBPROTOCOL = "pvws.cbor";
+
+    /** Web socket sub-protocol that selects the format, <code>null</code> for default */
+    final String subprotocol;
+
+    /** Factory for generators of this format */
+    final JsonFactory factory;
+
+    private MessageFormat(final String subprotocol, final JsonFactory factory)
+    {
+        this.subprotocol = subprotocol;
+        this.factory = factory;
+    }
+
+    /** @param subprotocol Negotiated web socket sub-protocol, may be <code>null</code> or empty
+     *  @return Format for that sub-protocol, defaulting to JSON
+     */
+    static MessageFormat forSubprotocol(final String subprotocol)
+    {
+        for (MessageFormat format : values())
+            if (format.subprotocol != null  &&  format.subprotocol.equals(subprotocol))
+                return format;
+        return JSON;
+    }
+
+    /** Start of JSON batch */
+    private static final byte[] JSON_BATCH_START = "{\"type\":\"updates\",\"items\":[".getBytes(StandardCharsets.UTF_8),
+                                JSON_BATCH_END = "]}".getBytes(StandardCharsets.UTF_8);
+
+    /** Start of CBOR batch: Map (indefinite length) with "type": "updates", "items": array (indefinite length) */
+    private static final byte[] CBOR_BATCH_START =
+    {
+        (byte) 0xBF,
+        0x64, 't', 'y', 'p', 'e',
+        0x67, 'u', 'p', 'd', 'a', 't', 'e', 's',
+        0x65, 'i', 't', 'e', 'm', 's',
+        (byte) 0x9F
+    };
+
+    /** End of CBOR batch: 'break' for array and map */
+    private static final byte[] CBOR_BATCH_END = { (byte) 0xFF, (byte) 0xFF };
+
+    /** @param items Messages of this format
+     *  @return One 'updates' message with all the items
+     */
+    Message batch(final List<Message> items)
+    {
+        int size = 32;
+        for (Message item : items)
+            size += item.size() + 1;
+        final ByteArrayOutputStream buf = new ByteArrayOutputStream(size);
+        if (this == JSON)
+        {
+            buf.writeBytes(JSON_BATCH_START);
+            for (int i=0; i<items.size(); ++i)
+            {
+                if (i > 0)
+                    buf.write(',');
+                items.get(i).writeTo(buf);
+            }
+            buf.writeBytes(JSON_BATCH_END);
+        }
+        else
+        {
+            buf.writeBytes(CBOR_BATCH_START);
+            for (Message item : items)
+                item.writeTo(buf);
+            buf.writeBytes(CBOR_BATCH_END);
+        }
+        return toMessage(buf.toByteArray());
+    }
+
+    /** @param encoded Encoded message
+     *  @return Text message for JSON, otherwise binary message
+     */
+    Message toMessage(final byte[] encoded)
+    {
+        return this == JSON ? Message.text(encoded)
+                            : Message.binary(ByteBuffer.wrap(encoded));
+    }
+}
@@ -0,0 +1,399 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import static pvws.PVWebSocketContext.logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+/** Sends the queued messages of a {@link WebSocket}
+ *
+ *  <p>Multiple threads concurrently writing to the socket results in
+ *  IllegalStateException "remote endpoint was in state [TEXT_FULL_WRITING]".
+ *  Each sender thus has at most one write in flight per socket.
+ *
+ *  <p>Selected via the PV_SENDER environment variable:
+ *  <ul>
+ *  <li>"thread": Platform thread per socket that blocks on the queue and on each write (default)
+ *  <li>"virtual": Same, but using a virtual thread
+ *  <li>"async": Shared executor starts asynchronous writes,
+ *      the next write starts when the previous one completes
+ *  </ul>
+ *
+ *  <p>For sockets that requested batching, queued messages are combined
+ *  into one 'updates' message. The sender waits PV_BATCH_MS
+ *  for messages to accumulate, then combines up to PV_BATCH_BYTES.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+abstract class MessageSender
+{
+    /** Sender implementation, see class description */
+    static final String PV_SENDER;
+
+    /** Time to wait for messages to accumulate into a batch */
+    static final int BATCH_MS;
+
+    /** Maximum size of a batch */
+    static final int BATCH_BYTES;
+
+    static
+    {
+        String spec = System.getenv("PV_SENDER");
+        PV_SENDER = spec == null ? "thread" : spec.toLowerCase();
+
+        spec = System.getenv("PV_BATCH_MS");
+        if (spec == null)
+            BATCH_MS = 100;
+        else
+            BATCH_MS = Integer.parseInt(spec);
+
+        spec = System.getenv("PV_BATCH_BYTES");
+        if (spec == null)
+            BATCH_BYTES = 64 * 1024;
+        else
+            BATCH_BYTES = Integer.parseInt(spec);
+
+        logger.log(Level.INFO, "PV_SENDER = " + PV_SENDER);
+        logger.log(Level.INFO, "PV_BATCH_MS = " + BATCH_MS);
+        logger.log(Level.INFO, "PV_BATCH_BYTES = " + BATCH_BYTES);
+    }
+
+    /** Socket to serve */
+    protected final WebSocket socket;
+
+    /** Messages taken from the socket's queue that need to be sent before the remaining queued messages.
+     *  Only accessed by the active sender.
+     */
+    private final ArrayDeque<Message> held = new ArrayDeque<>();
+
+    /** @param socket Socket to serve */
+    protected MessageSender(final WebSocket socket)
+    {
+        this.socket = socket;
+    }
+
+    /** @param socket Socket to serve
+     *  @return Sender for the socket, based on PV_SENDER
+     */
+    static MessageSender create(final WebSocket socket)
+    {
+        return switch (PV_SENDER)
+        {
+            case "async"   -> new AsyncSender(socket);
+            case "virtual" -> new ThreadSender(socket, true);
+            default        -> new ThreadSender(socket, false);
+        };
+    }
+
+    /** @param id Socket ID, used to name the sender */
+    void setName(final String id)
+    {
+        // Default: Nothing to name
+    }
+
+    /** Called after a message was added to the socket's queue */
+    abstract void messageQueued();
+
+    /** @return Held message or <code>null</code> */
+    protected Message pollHeld()
+    {
+        return held.poll();
+    }
+
+    /** @return Next held or queued message, or <code>null</code> */
+    protected Message poll()
+    {
+        final Message message = held.poll();
+        return message != null ? message : socket.pollMessage();
+    }
+
+    /** @return Next held or queued message, waiting for one if necessary
+     *  @throws InterruptedException when interrupted
+     */
+    protected Message take() throws InterruptedException
+    {
+        final Message message = held.poll();
+        return message != null ? message : socket.takeMessage();
+    }
+
+    /** @return Are messages held or queued? */
+    protected boolean hasMessages()
+    {
+        return !held.isEmpty()  ||  socket.hasQueuedMessages();
+    }
+
+    /** Combine message with further queued messages into a batch
+     *
+     *  @param first First message
+     *  @return Batch or first message if batching is not possible
+     */
+    protected Message batch(final Message first)
+    {
+        if (!socket.isBatch()  ||  !held.isEmpty()  ||  !socket.canBatch(first))
+            return first;
+
+        final List<Message> items = new ArrayList<>();
+        items.add(first);
+        int size = first.size();
+        Message next;
+        while ((next = socket.pollMessage()) != null)
+        {
+            if (socket.canBatch(next))
+            {
+                if (size + next.size() > BATCH_BYTES)
+                {   // Start next batch with this message
+                    held.add(next);
+                    break;
+                }
+                items.add(next);
+                size += next.size();
+            }
+            else if (socket.isExit(next))
+            {
+                held.add(next);
+                break;
+            }
+            else // Binary frames follow the batch that contains their update
+                held.add(next);
+        }
+        if (items.size() == 1)
+            return first;
+        final Message batch = socket.getFormat().batch(items);
+        // Account for batch instead of items
+        socket.addQueuedBytes(batch.size() - size);
+        return batch;
+    }
+
+    /** Sender that uses one thread per socket */
+    private static class ThreadSender extends MessageSender
+    {
+        private final Thread thread;
+
+        ThreadSender(final WebSocket socket, final boolean virtual)
+        {
+            super(socket);
+            if (virtual)
+                thread = Thread.ofVirtual().name("PVWS Write Thread").unstarted(this::writeQueuedMessages);
+            else
+            {
+                thread = new Thread(this::writeQueuedMessages, "PVWS Write Thread");
+                thread.setDaemon(true);
+            }
+            thread.start();
+        }
+
+        @Override
+        void setName(final String id)
+        {
+            thread.setName("PVWS Write Thread " + id);
+        }
+
+        @Override
+        void messageQueued()
+        {
+            // Thread is waiting on the queue
+        }
+
+        private void writeQueuedMessages()
+        {
+            try
+            {
+                while (true)
+                {
+                    Message message = pollHeld();
+                    if (message == null)
+                    {
+                        try
+                        {
+                            message = socket.takeMessage();
+                            // Allow more messages to accumulate for a batch
+                            if (socket.isBatch()  &&  socket.canBatch(message)  &&  BATCH_MS > 0)
+                                Thread.sleep(BATCH_MS);
+                        }
+                        catch (final InterruptedException ex)
+                        {
+                            return;
+                        }
+                    }
+                    message = batch(message);
+
+                    // Check if we should exit the thread
+                    if (socket.isExit(message))
+                    {
+                        logger.log(Level.FINE, () -> "Exiting write thread " + socket.getId());
+                        return;
+                    }
+                    final Message to_send = message;
+
+                    final Session safe_session = socket.getSession();
+                    try
+                    {
+                        if (safe_session == null)
+                            throw new Exception("No session");
+                        if (! safe_session.isOpen())
+                            throw new Exception("Session closed");
+                        socket.messageSending(to_send);
+                        final long start = System.nanoTime();
+                        to_send.send(safe_session.getBasicRemote());
+                        socket.messageSent(to_send, System.nanoTime() - start);
+                    }
+                    catch (final Exception ex)
+                    {
+                        socket.sendFailed(to_send, ex);
+
+                        // Clear queue
+                        Message drop = take();
+                        while (drop != null)
+                        {
+                            if (socket.isExit(drop))
+                            {
+                                logger.log(Level.FINE, () -> "Exiting write thread " + socket.getId());
+                                return;
+                            }
+                            socket.messageDropped(drop);
+                            drop = take();
+                        }
+                    }
+                }
+            }
+            catch (Throwable ex)
+            {
+                logger.log(Level.WARNING, "Write thread error for " + socket.getId(), ex);
+            }
+        }
+    }
+
+    /** Sender that uses asynchronous writes, started from a shared executor */
+    private static class AsyncSender extends MessageSender implements SendHandler
+    {
+        private static final AtomicInteger thread_count = new AtomicInteger();
+
+        /** Executor that starts writes. Threads don't block on writes, so a few suffice. */
+        private static final ScheduledExecutorService executor =
+            Executors.newScheduledThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), runnable ->
+            {
+                final Thread thread = new Thread(runnable, "PVWS Sender " + thread_count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+        /** Is a write in flight, or about to be started? */
+        private final AtomicBoolean busy = new AtomicBoolean();
+
+        /** Message that's being written */
+        private volatile Message current;
+
+        /** Time when writing the current message started */
+        private volatile long start;
+
+        /** Did a write fail? Then drop all further messages */
+        private volatile boolean failed = false;
+
+        AsyncSender(final WebSocket socket)
+        {
+            super(socket);
+        }
+
+        @Override
+        void messageQueued()
+        {
+            if (busy.compareAndSet(false, true))
+                scheduleNext();
+        }
+
+        /** Schedule {@link #sendNext()}, allowing time to accumulate a batch */
+        private void scheduleNext()
+        {
+            if (socket.isBatch()  &&  BATCH_MS > 0)
+                executor.schedule(this::sendNext, BATCH_MS, TimeUnit.MILLISECONDS);
+            else
+                executor.execute(this::sendNext);
+        }
+
+        /** Start writing the next queued message. Called while 'busy' */
+        private void sendNext()
+        {
+            Message message;
+            do
+            {
+                message = poll();
+                if (message == null)
+                {
+                    busy.set(false);
+                    // Message might have been queued after poll(), before clearing 'busy'
+                    if (hasMessages())
+                        messageQueued();
+                    return;
+                }
+                if (socket.isExit(message))
+                {   // Remain 'busy' to ignore further messages
+                    logger.log(Level.FINE, () -> "Exiting async sender " + socket.getId());
+                    return;
+                }
+                if (failed)
+                    socket.messageDropped(message);
+            }
+            // After an error, drop messages until exit
+            while (failed);
+            message = batch(message);
+
+            final Session safe_session = socket.getSession();
+            try
+            {
+                if (safe_session == null)
+                    throw new Exception("No session");
+                if (! safe_session.isOpen())
+                    throw new Exception("Session closed");
+                current = message;
+                socket.messageSending(message);
+                start = System.nanoTime();
+                message.send(safe_session.getAsyncRemote(), this);
+            }
+            catch (final Exception ex)
+            {
+                handleError(message, ex);
+            }
+        }
+
+        /** Called when write completes */
+        @Override
+        public void onResult(final SendResult result)
+        {
+            final Message message = current;
+            current = null;
+            if (result.isOK())
+            {
+                socket.messageSent(message, System.nanoTime() - start);
+                // Start next write on executor, not nested in this callback
+                scheduleNext();
+            }
+            else
+                handleError(message, new Exception("Write failed", result.getException()));
+        }
+
+        private void handleError(final Message message, final Exception ex)
+        {
+            socket.sendFailed(message, ex);
+            failed = true;
+            executor.execute(this::sendNext);
+        }
+    }
+}
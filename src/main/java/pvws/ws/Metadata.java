@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.List;
+import java.util.Objects;
+
+import org.epics.util.stats.Range;
+import org.epics.vtype.Display;
+import org.epics.vtype.EnumDisplay;
+import org.epics.vtype.VEnum;
+import org.epics.vtype.VEnumArray;
+import org.epics.vtype.VNumber;
+import org.epics.vtype.VNumberArray;
+import org.epics.vtype.VType;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+/** Metadata block of a PV
+ *
+ *  <p>Units, description, precision and limits of a {@link Display},
+ *  or the labels of an {@link EnumDisplay}.
+ *  Text is serialized once when the block is created.
+ *  {@link SharedPV} keeps the block while the metadata stays the same,
+ *  and sends it again to all subscribers when it changes.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public final class Metadata
+{
+    private static final SerializedString UNITS = new SerializedString("units"),
+                                          DESCRIPTION = new SerializedString("description"),
+                                          PRECISION = new SerializedString("precision"),
+                                          MIN = new SerializedString("min"),
+                                          MAX = new SerializedString("max"),
+                                          WARN_LOW = new SerializedString("warn_low"),
+                                          WARN_HIGH = new SerializedString("warn_high"),
+                                          ALARM_LOW = new SerializedString("alarm_low"),
+                                          ALARM_HIGH = new SerializedString("alarm_high");
+
+    /** {@link Display} or {@link EnumDisplay} */
+    private final Object display;
+
+    // For Display
+    private final SerializedString units, description;
+    private final int precision;
+
+    // For EnumDisplay
+    private final SerializedString[] labels;
+
+    private Metadata(final Display display)
+    {
+        this.display = display;
+        units = serialize(display.getUnit());
+        description = serialize(display.getDescription());
+        final NumberFormat format =  display.getFormat();
+        precision = format instanceof DecimalFormat d ? d.getMaximumFractionDigits() : -1;
+        labels = null;
+    }
+
+    private Metadata(final EnumDisplay display)
+    {
+        this.display = display;
+        units = description = null;
+        precision = -1;
+        final List<String> choices = display.getChoices();
+        labels = new SerializedString[choices.size()];
+        for (int i=0; i<labels.length; ++i)
+            labels[i] = serialize(choices.get(i));
+    }
+
+    private static SerializedString serialize(final String text)
+    {
+        return text == null ? null : new SerializedString(text);
+    }
+
+    /** @param value Value
+     *  @return {@link Display} or {@link EnumDisplay} of value, <code>null</code> if it has none
+     */
+    private static Object getDisplay(final VType value)
+    {
+        if (value instanceof VNumber v)
+            return v.getDisplay();
+        if (value instanceof VNumberArray v)
+            return v.getDisplay();
+        if (value instanceof VEnum v)
+            return v.getDisplay();
+        if (value instanceof VEnumArray v)
+            return v.getDisplay();
+        return null;
+    }
+
+    /** @param value Value
+     *  @param last Metadata of previous value or <code>null</code>
+     *  @return Metadata of value: 'last' if unchanged, <code>null</code> if value has none
+     */
+    static Metadata of(final VType value, final Metadata last)
+    {
+        final Object display = getDisplay(value);
+        if (last != null  &&  (last.display == display  ||  Objects.equals(last.display, display)))
+            return last;
+        if (display instanceof Display d)
+            return new Metadata(d);
+        if (display instanceof EnumDisplay d)
+            return new Metadata(d);
+        return null;
+    }
+
+    /** @return Display precision, -1 if not known */
+    int getPrecision()
+    {
+        return precision;
+    }
+
+    /** Write metadata fields into the current JSON object
+     *  @param g {@link JsonGenerator}
+     *  @throws Exception on error
+     */
+    void write(final JsonGenerator g) throws Exception
+    {
+        if (labels != null)
+        {
+            g.writeFieldName(Vtype2Json.LABELS);
+            g.writeStartArray();
+            for (final SerializedString label : labels)
+                g.writeString(label);
+            g.writeEndArray();
+            return;
+        }
+
+        final Display display = (Display) this.display;
+        writeString(g, UNITS, units);
+        writeString(g, DESCRIPTION, description);
+
+        if (precision >= 0)
+        {
+            g.writeFieldName(PRECISION);
+            g.writeNumber(precision);
+        }
+
+        writeRange(g, MIN, MAX, display.getDisplayRange());
+        writeRange(g, WARN_LOW, WARN_HIGH, display.getWarningRange());
+        writeRange(g, ALARM_LOW, ALARM_HIGH, display.getAlarmRange());
+    }
+
+    private static void writeString(final JsonGenerator g, final SerializedString field, final SerializedString text) throws Exception
+    {
+        g.writeFieldName(field);
+        if (text == null)
+            g.writeNull();
+        else
+            g.writeString(text);
+    }
+
+    private static void writeRange(final JsonGenerator g, final SerializedString low, final SerializedString high, final Range range) throws Exception
+    {
+        if (range == null)
+            return;
+        g.writeFieldName(low);
+        g.writeNumber(range.getMinimum());
+        g.writeFieldName(high);
+        g.writeNumber(range.getMaximum());
+    }
+}
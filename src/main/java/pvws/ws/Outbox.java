@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** Outbox of a {@link WebSocket}
+ *
+ *  <p>Control messages like 'list' replies or errors are sent in order.
+ *  PV updates are not queued as messages.
+ *  Instead, a {@link WebSocketPV} with a pending update is queued once,
+ *  and its latest update is encoded when it's its turn to be sent.
+ *  A slow client thus skips intermediate updates but always receives the latest value,
+ *  and the outbox holds at most one entry per subscribed PV.
+ *
+ *  <p>Messages are sent in priority lanes:
+ *  Control messages first, then scalar PV updates, then array PV updates.
+ *  To keep arrays from being starved by a large number of scalars,
+ *  one array update is sent after every {@link #SCALARS_PER_ARRAY} scalar updates.
+ *
+ *  <p>Messages are taken by one {@link MessageSender} at a time.
+ *  The outbox is guarded by a lock instead of a monitor
+ *  so that a virtual sender thread waiting in {@link #take()}
+ *  does not pin its carrier thread.
+ *
+ *  @author Kay Kasemir
+ */
+final class Outbox
+{
+    /** Lock for all lanes */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signaled when something is added */
+    private final Condition available = lock.newCondition();
+
+    /** Control messages, in order. SYNC on lock */
+    private final ArrayDeque<Message> control = new ArrayDeque<>();
+
+    /** Time (System.nanoTime) when each control message was queued. SYNC on lock */
+    private final ArrayDeque<Long> control_nanos = new ArrayDeque<>();
+
+    /** Maximum number of queued control messages */
+    private final int capacity;
+
+    /** Number of scalar updates sent before an array update when both are pending */
+    static final int SCALARS_PER_ARRAY = 4;
+
+    /** Scalar PVs with pending update, each at most once. SYNC on lock */
+    private final ArrayDeque<WebSocketPV> scalars = new ArrayDeque<>();
+
+    /** Array PVs with pending update, each at most once. SYNC on lock */
+    private final ArrayDeque<WebSocketPV> arrays = new ArrayDeque<>();
+
+    /** Scalar updates sent since the last array update. SYNC on lock */
+    private int scalar_count = 0;
+
+    /** Remaining messages for the last PV, i.e. binary frame after JSON. SYNC on lock */
+    private final ArrayDeque<Message> staged = new ArrayDeque<>();
+
+    /** @param capacity Maximum number of queued control messages */
+    Outbox(final int capacity)
+    {
+        this.capacity = capacity;
+    }
+
+    /** @param message Control message to add
+     *  @return <code>true</code> if queued, <code>false</code> if outbox is full
+     */
+    boolean offer(final Message message)
+    {
+        lock.lock();
+        try
+        {
+            if (control.size() >= capacity)
+                return false;
+            control.add(message);
+            control_nanos.add(System.nanoTime());
+            available.signalAll();
+            return true;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /** @param pv PV that has a pending update
+     *  @param array Is the update an array?
+     */
+    void offerUpdate(final WebSocketPV pv, final boolean array)
+    {
+        lock.lock();
+        try
+        {
+            // PV already waiting in the outbox will send its latest update
+            if (pv.in_outbox)
+                return;
+            pv.in_outbox = true;
+            pv.outbox_nanos = System.nanoTime();
+            if (array)
+                arrays.add(pv);
+            else
+                scalars.add(pv);
+            available.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /** @return Number of queued messages and PVs with pending update */
+    int size()
+    {
+        lock.lock();
+        try
+        {
+            return staged.size() + control.size() + scalars.size() + arrays.size();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /** @return Number of control messages, scalar PVs and array PVs (including their staged frames) in the outbox */
+    int[] getDepths()
+    {
+        lock.lock();
+        try
+        {
+            return new int[] { control.size(), scalars.size(), arrays.size() + staged.size() };
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /** @return Time in ms that the oldest control message or PV update has been waiting, 0 if none */
+    long getAge()
+    {
+        lock.lock();
+        try
+        {
+            final long now = System.nanoTime();
+            long oldest = now;
+            if (! control_nanos.isEmpty())
+                oldest = Math.min(oldest, control_nanos.peek());
+            if (! scalars.isEmpty())
+                oldest = Math.min(oldest, scalars.peek().outbox_nanos);
+            if (! arrays.isEmpty())
+                oldest = Math.min(oldest, arrays.peek().outbox_nanos);
+            return (now - oldest) / 1000000;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /** @return Is there anything to send? */
+    boolean isEmpty()
+    {
+        lock.lock();
+        try
+        {
+            return staged.isEmpty()  &&  control.isEmpty()  &&  scalars.isEmpty()  &&  arrays.isEmpty();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /** @return Next PV with pending update, or <code>null</code>. SYNC on lock */
+    private WebSocketPV nextPV()
+    {
+        if (! arrays.isEmpty()  &&  (scalars.isEmpty()  ||  scalar_count >= SCALARS_PER_ARRAY))
+        {
+            scalar_count = 0;
+            return arrays.poll();
+        }
+        final WebSocketPV pv = scalars.poll();
+        if (pv != null)
+            ++scalar_count;
+        return pv;
+    }
+
+    /** @return Next message or <code>null</code> */
+    Message poll()
+    {
+        while (true)
+        {
+            final WebSocketPV pv;
+            lock.lock();
+            try
+            {
+                Message message = staged.poll();
+                if (message == null)
+                {
+                    message = control.poll();
+                    control_nanos.poll();
+                }
+                if (message != null)
+                    return message;
+                pv = nextPV();
+                if (pv == null)
+                    return null;
+                // Later updates of the PV need to queue it again
+                pv.in_outbox = false;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+
+            // Encode outside of lock to not delay updates
+            final List<Message> messages = new ArrayList<>(2);
+            pv.getPendingMessages(messages);
+            if (messages.isEmpty())
+                continue;
+            lock.lock();
+            try
+            {
+                for (int i=1; i<messages.size(); ++i)
+                    staged.add(messages.get(i));
+            }
+            finally
+            {
+                lock.unlock();
+            }
+            return messages.get(0);
+        }
+    }
+
+    /** @return Next message, waiting for one if necessary
+     *  @throws InterruptedException when interrupted
+     */
+    Message take() throws InterruptedException
+    {
+        while (true)
+        {
+            lock.lockInterruptibly();
+            try
+            {
+                while (isEmpty())
+                    available.await();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+            final Message message = poll();
+            if (message != null)
+                return message;
+        }
+    }
+
+    /** Drop everything */
+    void clear()
+    {
+        lock.lock();
+        try
+        {
+            staged.clear();
+            control.clear();
+            control_nanos.clear();
+            for (WebSocketPV pv : scalars)
+                pv.in_outbox = false;
+            for (WebSocketPV pv : arrays)
+                pv.in_outbox = false;
+            scalars.clear();
+            arrays.clear();
+            scalar_count = 0;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+}
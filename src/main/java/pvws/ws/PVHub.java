@@ -0,0 +1,366 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import static pvws.PVWebSocketContext.logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/** Server-wide hub of {@link SharedPV}s
+ *
+ *  <p>All {@link WebSocketPV}s for the same PV name and throttle
+ *  share one {@link SharedPV}, which holds the single
+ *  upstream subscription and encodes each update just once.
+ *
+ *  <p>When the last subscriber of a shared PV is gone,
+ *  the PV lingers for PV_LINGER_MS, staying connected with its last value,
+ *  so that a web client which navigates to another display
+ *  can re-subscribe without searching for the PV again.
+ *  At most PV_LINGER_MAX PVs linger, the least recently used PV is released first.
+ *
+ *  <p>Shared PVs of the same name but different throttle or aggregation
+ *  add their values to one {@link History}.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class PVHub
+{
+    /** Time that unused PVs linger, 0 to release them right away */
+    static final int LINGER_MS;
+
+    /** Maximum number of lingering PVs */
+    static final int LINGER_MAX;
+
+    static
+    {
+        String spec = System.getenv("PV_LINGER_MS");
+        if (spec == null)
+            LINGER_MS = 0;
+        else
+            LINGER_MS = Math.max(0, Integer.parseInt(spec));
+
+        spec = System.getenv("PV_LINGER_MAX");
+        if (spec == null)
+            LINGER_MAX = 1000;
+        else
+            LINGER_MAX = Math.max(0, Integer.parseInt(spec));
+
+        logger.log(Level.INFO, "PV_LINGER_MS = " + LINGER_MS);
+        logger.log(Level.INFO, "PV_LINGER_MAX = " + LINGER_MAX);
+    }
+
+    /** History used by the shared PVs of one name */
+    private static class SharedHistory
+    {
+        final History history;
+        /** Number of shared PVs, including lingering ones, that use the history */
+        int users = 0;
+
+        SharedHistory(final History history)
+        {
+            this.history = history;
+        }
+    }
+
+    /** Map of {@link SharedPV#getKey()} to shared PV
+     *
+     *  <p>SYNC on access.
+     *  Lock order is hub, then {@link SharedPV}.
+     */
+    private static final Map<String, SharedPV> pvs = new HashMap<>();
+
+    /** Shared PVs without subscribers. SYNC on {@link #pvs} */
+    private static final LingeringPVs lingering = new LingeringPVs(LINGER_MS, LINGER_MAX);
+
+    /** Map of PV name to history. SYNC on {@link #pvs} */
+    private static final Map<String, SharedHistory> histories = new HashMap<>();
+
+    /** Subscriptions that found a lingering PV respectively created a new one.
+     *
+     *  <p>Each subscription that finds no active shared PV counts once.
+     *  When {@link #subscribeCached} finds no value, it does not count,
+     *  because the PV is then subscribed via {@link #subscribe}, which counts.
+     *  Subscriptions to an active shared PV are neither hits nor misses.
+     *  SYNC on {@link #pvs}
+     */
+    private static long hits = 0, misses = 0;
+
+    static
+    {
+        if (LINGER_MS > 0)
+        {
+            final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable ->
+            {
+                final Thread thread = new Thread(runnable, "PVWS Linger");
+                thread.setDaemon(true);
+                return thread;
+            });
+            final long period = Math.min(1000, LINGER_MS);
+            timer.scheduleWithFixedDelay(PVHub::releaseExpired, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Subscribe to a PV, creating the shared PV if necessary
+     *
+     *  <p>A new shared PV is added to the hub right away,
+     *  but started outside of the hub lock.
+     *  Concurrent subscribers to the same new PV wait for that start.
+     *
+     *  @param name PV name
+     *  @param throttle_ms Value throttle
+     *  @param array_throttle_ms Array value throttle
+     *  @param aggregate Include statistics of all values received within the throttle period?
+     *  @param subscriber {@link WebSocketPV} to notify about updates
+     *  @return {@link SharedPV}
+     *  @throws Exception on error, for example invalid PV name
+     */
+    static SharedPV subscribe(final String name, final int throttle_ms, final int array_throttle_ms,
+                              final boolean aggregate, final WebSocketPV subscriber) throws Exception
+    {
+        final String key = SharedPV.getKey(name, throttle_ms, array_throttle_ms, aggregate);
+        SharedPV shared;
+        boolean created = false;
+        synchronized (pvs)
+        {
+            shared = pvs.get(key);
+            if (shared == null)
+            {
+                shared = reuseLingering(key);
+                if (shared == null)
+                {
+                    ++misses;
+                    logger.log(Level.FINE, () -> "Creating shared PV " + key);
+                    shared = new SharedPV(name, throttle_ms, array_throttle_ms, aggregate, acquireHistory(name));
+                    created = true;
+                }
+                pvs.put(key, shared);
+            }
+            shared.subscribe(subscriber);
+        }
+
+        // Connect PV without blocking the hub
+        try
+        {
+            if (created)
+                shared.start();
+            else
+                shared.awaitStart();
+        }
+        catch (final Exception ex)
+        {
+            synchronized (pvs)
+            {
+                shared.unsubscribe(subscriber);
+                if (pvs.get(key) == shared)
+                    pvs.remove(key);
+                if (created)
+                    releaseHistory(name);
+            }
+            if (created)
+                shared.dispose();
+            throw ex;
+        }
+        return shared;
+    }
+
+    /** Subscribe to a PV only if it is already shared with a value
+     *
+     *  <p>Checks for the value and subscribes in one step under the hub lock,
+     *  so the PV cannot be released in between.
+     *  The new subscriber receives the cached value right away.
+     *
+     *  @param name PV name
+     *  @param throttle_ms Value throttle
+     *  @param array_throttle_ms Array value throttle
+     *  @param aggregate Include statistics?
+     *  @param subscriber {@link WebSocketPV} to notify about updates
+     *  @return {@link SharedPV} or <code>null</code> when there is no shared PV with a value
+     */
+    static SharedPV subscribeCached(final String name, final int throttle_ms, final int array_throttle_ms,
+                                    final boolean aggregate, final WebSocketPV subscriber)
+    {
+        final String key = SharedPV.getKey(name, throttle_ms, array_throttle_ms, aggregate);
+        synchronized (pvs)
+        {
+            SharedPV shared = pvs.get(key);
+            if (shared == null)
+            {
+                shared = lingering.get(key);
+                if (shared == null  ||  shared.getLastValue() == null)
+                    return null;
+                reuseLingering(key);
+                pvs.put(key, shared);
+            }
+            else if (shared.getLastValue() == null)
+                return null;
+            shared.subscribe(subscriber);
+            return shared;
+        }
+    }
+
+    /** Un-subscribe from a PV, closing the shared PV when no longer used
+     *
+     *  @param shared {@link SharedPV}
+     *  @param subscriber {@link WebSocketPV} that was notified about updates
+     */
+    static void unsubscribe(final SharedPV shared, final WebSocketPV subscriber)
+    {
+        final SharedPV release;
+        synchronized (pvs)
+        {
+            if (shared.unsubscribe(subscriber) > 0)
+                return;
+            final String key = shared.getKey();
+            pvs.remove(key);
+            if (lingering.isEnabled())
+            {
+                logger.log(Level.FINE, () -> "Lingering shared PV " + key);
+                // Release the least recently used PV when there are too many
+                release = lingering.add(shared, System.currentTimeMillis());
+            }
+            else
+                release = shared;
+            if (release != null)
+                releaseHistory(release.getName());
+        }
+        if (release != null)
+        {
+            logger.log(Level.FINE, () -> "Closing shared PV " + release.getKey());
+            release.dispose();
+        }
+    }
+
+    /** Re-use a lingering PV. Caller must hold the lock on {@link #pvs}
+     *  @param key {@link SharedPV#getKey()}
+     *  @return Lingering PV, now removed from the lingering PVs, or <code>null</code>
+     */
+    private static SharedPV reuseLingering(final String key)
+    {
+        final SharedPV shared = lingering.remove(key);
+        if (shared != null)
+        {
+            ++hits;
+            logger.log(Level.FINE, () -> "Re-using lingering shared PV " + key);
+        }
+        return shared;
+    }
+
+    /** Get history for a new shared PV. Caller must hold the lock on {@link #pvs}
+     *  @param name PV name
+     *  @return History shared with the other shared PVs of that name, <code>null</code> if PV has no history
+     */
+    private static History acquireHistory(final String name)
+    {
+        SharedHistory shared = histories.get(name);
+        if (shared == null)
+        {
+            final History history = History.forPV(name);
+            if (history == null)
+                return null;
+            shared = new SharedHistory(history);
+            histories.put(name, shared);
+        }
+        ++shared.users;
+        return shared.history;
+    }
+
+    /** Release history of a closed shared PV. Caller must hold the lock on {@link #pvs}
+     *  @param name PV name
+     */
+    private static void releaseHistory(final String name)
+    {
+        final SharedHistory shared = histories.get(name);
+        if (shared != null  &&  --shared.users <= 0)
+            histories.remove(name);
+    }
+
+    /** @param name PV name
+     *  @return History of the PV, <code>null</code> if PV has no history or is not shared
+     */
+    static History getHistory(final String name)
+    {
+        synchronized (pvs)
+        {
+            final SharedHistory shared = histories.get(name);
+            return shared == null ? null : shared.history;
+        }
+    }
+
+    /** Release lingering PVs that expired */
+    private static void releaseExpired()
+    {
+        final List<SharedPV> expired;
+        synchronized (pvs)
+        {
+            expired = lingering.removeExpired(System.currentTimeMillis());
+            for (final SharedPV shared : expired)
+                releaseHistory(shared.getName());
+        }
+        for (final SharedPV shared : expired)
+        {
+            logger.log(Level.FINE, () -> "Closing shared PV " + shared.getKey());
+            shared.dispose();
+        }
+    }
+
+    /** @return Time that unused PVs linger, 0 if they're released right away */
+    public static int getLingerTime()
+    {
+        return LINGER_MS;
+    }
+
+    /** @return Maximum number of lingering PVs */
+    public static int getLingerLimit()
+    {
+        return LINGER_MAX;
+    }
+
+    /** @return Number of lingering PVs */
+    public static int getLingeringCount()
+    {
+        synchronized (pvs)
+        {
+            return lingering.size();
+        }
+    }
+
+    /** @return Number of subscriptions that re-used a lingering PV */
+    public static long getLingerHits()
+    {
+        synchronized (pvs)
+        {
+            return hits;
+        }
+    }
+
+    /** @return Number of subscriptions that had to create a new PV */
+    public static long getLingerMisses()
+    {
+        synchronized (pvs)
+        {
+            return misses;
+        }
+    }
+
+    /** @return Snapshot of currently shared PVs */
+    public static Collection<SharedPV> getSharedPVs()
+    {
+        synchronized (pvs)
+        {
+            return new ArrayList<>(pvs.values());
+        }
+    }
+}
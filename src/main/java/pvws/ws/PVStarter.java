@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import static pvws.PVWebSocketContext.logger;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+
+/** Server-wide pipeline that starts {@link WebSocketPV}s
+ *
+ *  <p>Sockets hand PVs of 'subscribe' requests over in batches,
+ *  so the thread that handles the request does not block on starting PVs.
+ *  One thread starts the PVs in order.
+ *  To avoid search storms when many clients subscribe at once,
+ *  at most PV_START_LIMIT PVs may be connecting at a time.
+ *  A PV stops counting as connecting when it receives its first value,
+ *  is disposed, or after PV_START_TIMEOUT_MS.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+final class PVStarter
+{
+    /** Maximum number of PVs that are connecting */
+    static final int LIMIT;
+
+    /** Time after which a PV that did not connect no longer counts as connecting */
+    static final int TIMEOUT_MS;
+
+    /** Number of PVs that a socket hands over at once */
+    static final int BATCH;
+
+    static
+    {
+        String spec = System.getenv("PV_START_LIMIT");
+        if (spec == null)
+            LIMIT = 1000;
+        else
+            LIMIT = Math.max(1, Integer.parseInt(spec));
+
+        spec = System.getenv("PV_START_TIMEOUT_MS");
+        if (spec == null)
+            TIMEOUT_MS = 5000;
+        else
+            TIMEOUT_MS = Integer.parseInt(spec);
+
+        spec = System.getenv("PV_START_BATCH");
+        if (spec == null)
+            BATCH = 100;
+        else
+            BATCH = Math.max(1, Integer.parseInt(spec));
+
+        logger.log(Level.INFO, "PV_START_LIMIT = " + LIMIT);
+        logger.log(Level.INFO, "PV_START_TIMEOUT_MS = " + TIMEOUT_MS);
+        logger.log(Level.INFO, "PV_START_BATCH = " + BATCH);
+    }
+
+    /** PVs to start */
+    private static final LinkedBlockingQueue<WebSocketPV> queue = new LinkedBlockingQueue<>();
+
+    /** PVs that are connecting, with time (ms since epoch) when they were started.
+     *  Ordered by start time. SYNC on access
+     */
+    private static final Map<WebSocketPV, Long> connecting = new LinkedHashMap<>();
+
+    static
+    {
+        final Thread thread = new Thread(PVStarter::startQueuedPVs, "PVWS Starter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** @param pvs PVs to start */
+    static void start(final Collection<WebSocketPV> pvs)
+    {
+        queue.addAll(pvs);
+    }
+
+    /** @return Number of PVs waiting to be started */
+    static int getQueuedCount()
+    {
+        return queue.size();
+    }
+
+    /** @return Number of PVs that are connecting */
+    static int getConnectingCount()
+    {
+        synchronized (connecting)
+        {
+            return connecting.size();
+        }
+    }
+
+    /** @param pv PV that connected, was disposed, or failed to start */
+    static void connected(final WebSocketPV pv)
+    {
+        synchronized (connecting)
+        {
+            if (connecting.remove(pv) != null)
+                connecting.notifyAll();
+        }
+    }
+
+    private static void startQueuedPVs()
+    {
+        while (true)
+        {
+            try
+            {
+                final WebSocketPV pv = queue.take();
+                awaitCapacity();
+                synchronized (connecting)
+                {
+                    connecting.put(pv, System.currentTimeMillis());
+                }
+                try
+                {
+                    pv.start();
+                }
+                catch (final Exception ex)
+                {
+                    logger.log(Level.WARNING, "Cannot start PV " + pv.getName(), ex);
+                }
+            }
+            catch (final InterruptedException ex)
+            {
+                return;
+            }
+            catch (final Throwable ex)
+            {
+                logger.log(Level.WARNING, "PV start error", ex);
+            }
+        }
+    }
+
+    /** Wait until fewer than LIMIT PVs are connecting
+     *  @throws InterruptedException when interrupted
+     */
+    private static void awaitCapacity() throws InterruptedException
+    {
+        synchronized (connecting)
+        {
+            while (true)
+            {
+                // Expire PVs that did not connect
+                final long expired = System.currentTimeMillis() - TIMEOUT_MS;
+                final Iterator<Long> times = connecting.values().iterator();
+                while (times.hasNext()  &&  times.next() < expired)
+                    times.remove();
+
+                if (connecting.size() < LIMIT)
+                    return;
+                connecting.wait(100);
+            }
+        }
+    }
+}
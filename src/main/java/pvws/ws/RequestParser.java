@@ -0,0 +1,319 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import static pvws.PVWebSocketContext.json_factory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ContainerNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/** Streaming parser for requests from a web client
+ *
+ *  <p>Parses the parts of a text message as they arrive,
+ *  without buffering the complete message or building a tree for all of it.
+ *  Top-level fields other than "pvs" are small and collected into an {@link ObjectNode}.
+ *  The PV names in "pvs" are passed to the {@link Handler} one by one
+ *  if the "type" of the request is already known,
+ *  otherwise they are collected until the end of the message.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+final class RequestParser
+{
+    /** Handler for parsed requests */
+    interface Handler
+    {
+        /** Handle a PV name of a request while the request is still being parsed
+         *  @param request Fields of the request read so far, including "type"
+         *  @param name PV name
+         *  @throws Exception on error
+         */
+        void handlePV(ObjectNode request, String name) throws Exception;
+
+        /** Handle end of request
+         *  @param request Fields of the request except for "pvs"
+         *  @param pvs PV names that were not passed to {@link #handlePV}, <code>null</code> if request has no "pvs"
+         *  @param text Text of the request, <code>null</code> if it was too long to keep
+         *  @throws Exception on error
+         */
+        void handleRequest(ObjectNode request, List<String> pvs, String text) throws Exception;
+    }
+
+    /** Maximum length of request text that is kept for logging.
+     *  The complete text of 'echo' requests is kept.
+     */
+    private static final int MAX_TEXT = 8192;
+
+    private enum State
+    {
+        /** Expect start of request object */
+        START,
+        /** Expect top-level field name or end of request */
+        FIELD,
+        /** Expect start of "pvs" array */
+        PVS_START,
+        /** Expect PV names or end of "pvs" array */
+        PVS,
+        /** Reading value of a top-level field */
+        VALUE,
+        /** Read complete request */
+        DONE
+    }
+
+    private final Handler handler;
+
+    private JsonParser parser = null;
+    private ByteArrayFeeder feeder;
+    private State state;
+    private ObjectNode request;
+    private String field;
+    private List<String> pvs;
+
+    /** Containers of the current value and their pending field names */
+    private final ArrayDeque<ContainerNode<?>> containers = new ArrayDeque<>();
+    private final ArrayDeque<String> names = new ArrayDeque<>();
+
+    /** Start of message text, <code>null</code> when too long */
+    private StringBuilder text;
+
+    /** High surrogate at end of previous part */
+    private char pending_surrogate = 0;
+
+    /** Did handling of the current message fail? */
+    private boolean failed = false;
+
+    /** @param handler Handler for parsed requests */
+    RequestParser(final Handler handler)
+    {
+        this.handler = handler;
+    }
+
+    /** @return Start of the current message, for logging */
+    String getText()
+    {
+        return text == null ? "(long message)" : text.toString();
+    }
+
+    /** Parse part of a message
+     *
+     *  <p>After an error, remaining parts of the message are ignored.
+     *
+     *  @param part Part of text message
+     *  @param last Is this the last part?
+     *  @throws Exception on error
+     */
+    void parse(final String part, final boolean last) throws Exception
+    {
+        try
+        {
+            if (parser == null)
+                start();
+            if (! failed)
+                feed(part, last);
+        }
+        catch (final Exception ex)
+        {
+            failed = true;
+            throw ex;
+        }
+        finally
+        {
+            if (last)
+                end();
+        }
+    }
+
+    private void start() throws Exception
+    {
+        parser = json_factory.createNonBlockingByteArrayParser();
+        feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        state = State.START;
+        request = JsonNodeFactory.instance.objectNode();
+        field = null;
+        pvs = null;
+        containers.clear();
+        names.clear();
+        text = new StringBuilder();
+        pending_surrogate = 0;
+        failed = false;
+    }
+
+    /** @return Is the request an 'echo', or is its type not known, yet? */
+    private boolean isEcho()
+    {
+        final JsonNode type = request.get("type");
+        return type == null  ||  "echo".equals(type.asText());
+    }
+
+    private void end() throws Exception
+    {
+        parser.close();
+        parser = null;
+        feeder = null;
+        containers.clear();
+        names.clear();
+    }
+
+    private void feed(final String part, final boolean last) throws Exception
+    {
+        if (text != null)
+        {
+            // Keep text while the request could still be an 'echo'
+            if (text.length() + part.length() <= MAX_TEXT  ||  isEcho())
+                text.append(part);
+            else
+                text = null;
+        }
+
+        // Part may end in the middle of a surrogate pair
+        String chars = part;
+        if (pending_surrogate != 0)
+        {
+            chars = pending_surrogate + chars;
+            pending_surrogate = 0;
+        }
+        if (!last  &&  !chars.isEmpty()  &&  Character.isHighSurrogate(chars.charAt(chars.length()-1)))
+        {
+            pending_surrogate = chars.charAt(chars.length()-1);
+            chars = chars.substring(0, chars.length()-1);
+        }
+
+        final byte[] bytes = chars.getBytes(StandardCharsets.UTF_8);
+        feeder.feedInput(bytes, 0, bytes.length);
+        if (last)
+            feeder.endOfInput();
+
+        JsonToken token;
+        while ((token = parser.nextToken()) != null  &&  token != JsonToken.NOT_AVAILABLE)
+            handleToken(token);
+
+        if (last)
+        {
+            if (state != State.DONE)
+                throw new Exception("Incomplete request");
+            handler.handleRequest(request, pvs, text == null ? null : text.toString());
+        }
+    }
+
+    private void handleToken(final JsonToken token) throws Exception
+    {
+        switch (state)
+        {
+        case START:
+            if (token != JsonToken.START_OBJECT)
+                throw new Exception("Expected JSON object");
+            state = State.FIELD;
+            break;
+        case FIELD:
+            if (token == JsonToken.END_OBJECT)
+                state = State.DONE;
+            else
+            {
+                field = parser.currentName();
+                state = "pvs".equals(field) ? State.PVS_START : State.VALUE;
+            }
+            break;
+        case PVS_START:
+            if (token != JsonToken.START_ARRAY)
+                throw new Exception("Expected array of PV names for 'pvs'");
+            if (pvs == null)
+                pvs = new ArrayList<>();
+            state = State.PVS;
+            break;
+        case PVS:
+            if (token == JsonToken.END_ARRAY)
+                state = State.FIELD;
+            else if (token.isScalarValue())
+            {
+                final String name = parser.getText();
+                if (request.has("type"))
+                    handler.handlePV(request, name);
+                else
+                    pvs.add(name);
+            }
+            else
+                throw new Exception("Expected PV names in 'pvs'");
+            break;
+        case VALUE:
+            handleValue(token);
+            break;
+        default:
+            // Ignore anything after the request
+        }
+    }
+
+    private void handleValue(final JsonToken token) throws Exception
+    {
+        final JsonNodeFactory nodes = JsonNodeFactory.instance;
+        final JsonNode node;
+        switch (token)
+        {
+        case START_OBJECT:
+            containers.push(nodes.objectNode());
+            return;
+        case START_ARRAY:
+            containers.push(nodes.arrayNode());
+            return;
+        case FIELD_NAME:
+            names.push(parser.currentName());
+            return;
+        case END_OBJECT:
+        case END_ARRAY:
+            node = containers.pop();
+            break;
+        case VALUE_STRING:
+            node = nodes.textNode(parser.getText());
+            break;
+        case VALUE_NUMBER_INT:
+            switch (parser.getNumberType())
+            {
+            case INT:
+                node = nodes.numberNode(parser.getIntValue());
+                break;
+            case LONG:
+                node = nodes.numberNode(parser.getLongValue());
+                break;
+            default:
+                node = nodes.numberNode(parser.getBigIntegerValue());
+            }
+            break;
+        case VALUE_NUMBER_FLOAT:
+            node = nodes.numberNode(parser.getDoubleValue());
+            break;
+        case VALUE_TRUE:
+        case VALUE_FALSE:
+            node = nodes.booleanNode(token == JsonToken.VALUE_TRUE);
+            break;
+        default:
+            node = nodes.nullNode();
+        }
+
+        // Add to enclosing container, or complete the value of the top-level field
+        final ContainerNode<?> parent = containers.peek();
+        if (parent instanceof ArrayNode array)
+            array.add(node);
+        else if (parent instanceof ObjectNode object)
+            object.set(names.pop(), node);
+        else
+        {
+            request.set(field, node);
+            state = State.FIELD;
+        }
+    }
+}
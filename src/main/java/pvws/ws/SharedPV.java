@@ -0,0 +1,670 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import static pvws.PVWebSocketContext.logger;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+import org.epics.vtype.Array;
+import org.epics.vtype.VImage;
+import org.epics.vtype.VNumber;
+import org.epics.vtype.VNumberArray;
+import org.epics.vtype.VType;
+import org.phoebus.pv.PV;
+import org.phoebus.pv.PVPool;
+
+import io.reactivex.rxjava3.disposables.Disposable;
+
+/** PV shared by all {@link WebSocketPV}s for the same name and throttle
+ *
+ *  <p>Holds the one subscription to the underlying {@link PV}.
+ *  Received values are published by the {@link UpdateScheduler}
+ *  at the throttle period requested by its subscribers,
+ *  optionally with the {@link Aggregate} statistics of all values
+ *  received within the period.
+ *  Each update is encoded at most once per variant,
+ *  i.e. as JSON or another {@link MessageFormat},
+ *  with complete metadata for new subscribers
+ *  or with just the changes for those who received the previous update,
+ *  including the {@link Metadata} block only when it changed,
+ *  with array elements as base64 or in a separate binary frame,
+ *  all or only the changed array elements, optionally decimated
+ *  or for a view of an image,
+ *  and the same message is then queued on all subscribed web sockets.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class SharedPV
+{
+    /** Value throttle */
+    static final int THROTTLE_MS;
+
+    /** Array value throttle */
+    static final int ARRAY_THROTTLE_MS;
+
+    /** Minimum throttle that clients may request */
+    static final int THROTTLE_MIN_MS;
+
+    /** Maximum throttle that clients may request */
+    static final int THROTTLE_MAX_MS;
+
+    /** Support writing? */
+    static final boolean PV_WRITE_SUPPORT;
+
+    static
+    {
+        String spec = System.getenv("PV_THROTTLE_MS");
+        if (spec == null)
+            THROTTLE_MS = 1000;
+        else
+            THROTTLE_MS = Integer.parseInt(spec);
+
+        spec = System.getenv("PV_ARRAY_THROTTLE_MS");
+        if (spec == null)
+            ARRAY_THROTTLE_MS = 10000;
+        else
+            ARRAY_THROTTLE_MS = Integer.parseInt(spec);
+
+        spec = System.getenv("PV_THROTTLE_MIN_MS");
+        if (spec == null)
+            THROTTLE_MIN_MS = 100;
+        else
+            THROTTLE_MIN_MS = Integer.parseInt(spec);
+
+        spec = System.getenv("PV_THROTTLE_MAX_MS");
+        if (spec == null)
+            THROTTLE_MAX_MS = 60000;
+        else
+            THROTTLE_MAX_MS = Math.max(THROTTLE_MIN_MS, Integer.parseInt(spec));
+
+        spec = System.getenv("PV_WRITE_SUPPORT");
+        PV_WRITE_SUPPORT = "true".equalsIgnoreCase(spec);
+
+        logger.log(Level.INFO, "PV_THROTTLE_MS = " + THROTTLE_MS);
+        logger.log(Level.INFO, "PV_ARRAY_THROTTLE_MS = " + ARRAY_THROTTLE_MS);
+        logger.log(Level.INFO, "PV_THROTTLE_MIN_MS = " + THROTTLE_MIN_MS);
+        logger.log(Level.INFO, "PV_THROTTLE_MAX_MS = " + THROTTLE_MAX_MS);
+        logger.log(Level.INFO, "PV_WRITE_SUPPORT = " + PV_WRITE_SUPPORT);
+    }
+
+    /** One update of the PV, encoded on demand and shared by all subscribers */
+    static class Update
+    {
+        /** Number of message variants per format */
+        private static final int VARIANTS = 6;
+
+        final String name;
+        final int id;
+        final long sequence;
+        final VType value, last_value;
+        final Boolean readonly, last_readonly;
+        /** Metadata of the value, may be <code>null</code> */
+        final Metadata metadata;
+        /** Did metadata change since the previous update? */
+        final boolean metadata_changed;
+        /** Number of array elements before decimation, 0 if not decimated */
+        final int original_size;
+        /** Statistics of values since the previous update, <code>null</code> if not aggregated */
+        final Aggregate aggregate;
+        /** Previous update, only kept until the next update is published */
+        private volatile Update previous;
+        /** Derived variants of this update: Decimated by max_points, image by view */
+        private Map<Object, Update> derived = null;
+        /** Encoded messages, indexed by variant:
+         *  0, 1 with complete metadata, 2, 3 with changes, 4, 5 with changes and only changed array elements.
+         *  Odd indices send array elements in binary frame.
+         *  Each {@link MessageFormat} uses its own block of {@link #VARIANTS} entries.
+         */
+        private final Message[] messages = new Message[VARIANTS * MessageFormat.values().length];
+        /** Binary frames, indexed by 0 for all elements, 1 for changed elements */
+        private final Message[] frames = new Message[2];
+        private final boolean[] have_frame = new boolean[2];
+        private int[] ranges = null;
+        private boolean have_ranges = false;
+
+        /** @param name PV name
+         *  @param id ID of the {@link SharedPV}, also used for binary frames
+         *  @param sequence Sequence number of the update
+         *  @param value Value
+         *  @param last_value Value of the previous update, <code>null</code> for the first update
+         *  @param readonly Is PV read-only?
+         *  @param last_readonly Read-only state of the previous update, <code>null</code> for the first update
+         *  @param metadata Metadata of the value, may be <code>null</code>
+         *  @param metadata_changed Did metadata change since the previous update?
+         *  @param original_size Number of array elements before decimation, 0 if not decimated
+         *  @param aggregate Statistics of values since the previous update, <code>null</code> if not aggregated
+         */
+        Update(final String name, final int id, final long sequence,
+                       final VType value, final VType last_value,
+                       final Boolean readonly, final Boolean last_readonly,
+                       final Metadata metadata, final boolean metadata_changed,
+                       final int original_size, final Aggregate aggregate)
+        {
+            this.name = name;
+            this.id = id;
+            this.sequence = sequence;
+            this.value = value;
+            this.last_value = last_value;
+            this.readonly = readonly;
+            this.last_readonly = last_readonly;
+            this.metadata = metadata;
+            this.metadata_changed = metadata_changed;
+            this.original_size = original_size;
+            this.aggregate = aggregate;
+        }
+
+        /** Merge statistics of an update that a subscriber did not send
+         *
+         *  @param earlier Earlier update that was not sent, may be <code>null</code>
+         *  @param later Later update
+         *  @return Later update, including statistics of the earlier one
+         */
+        static Update merge(final Update earlier, final Update later)
+        {
+            if (earlier == null  ||  earlier.aggregate == null  ||  later.aggregate == null)
+                return later;
+            final Update merged = new Update(later.name, later.id, later.sequence, later.value, later.last_value,
+                                             later.readonly, later.last_readonly, later.metadata, later.metadata_changed,
+                                             later.original_size, Aggregate.merge(earlier.aggregate, later.aggregate));
+            merged.previous = later.previous;
+            return merged;
+        }
+
+        /** @param max_points Maximum number of array elements
+         *  @return Update with array decimated to min/max envelope,
+         *          or this update if no decimation is needed
+         */
+        Update getDecimated(final int max_points)
+        {
+            if (! (value instanceof VNumberArray array))
+                return this;
+            return derive(max_points, () -> ArrayDecimator.decimate(array, max_points), array.getData().size());
+        }
+
+        /** @param view View of image
+         *  @return Update with that view of the image,
+         *          or this update if the complete image is used
+         */
+        Update getImageView(final ImageView view)
+        {
+            if (! (value instanceof VImage image))
+                return this;
+            return derive(view, () -> view.apply(image), 0);
+        }
+
+        /** @param key Key that identifies the derived value, for example the max_points of decimation
+         *  @param compute Computes the derived value, <code>null</code> to use this update as is
+         *  @param original_size Original array size to report, 0 for none
+         *  @return Update with derived value or this update
+         */
+        private synchronized Update derive(final Object key, final Supplier<VType> compute, final int original_size)
+        {
+            if (derived == null)
+                derived = new HashMap<>();
+            Update result = derived.get(key);
+            if (result == null)
+            {
+                final VType derived_value = compute.get();
+                if (derived_value == null)
+                    result = this;
+                else
+                {   // Changes are relative to the previous derived value,
+                    // so that unchanged metadata is not sent again
+                    final Update prev = previous;
+                    final Update prev_derived = prev == null ? null : prev.peekDerived(key);
+                    result = new Update(name, id, sequence, derived_value,
+                                        prev_derived != null ? prev_derived.value : last_value,
+                                        readonly, last_readonly, metadata, metadata_changed,
+                                        original_size, aggregate);
+                }
+                derived.put(key, result);
+            }
+            return result;
+        }
+
+        /** @param key Key that identifies the derived value
+         *  @return Derived update if it has already been computed, else <code>null</code>
+         */
+        private synchronized Update peekDerived(final Object key)
+        {
+            return derived == null ? null : derived.get(key);
+        }
+
+        /** @param format Message format
+         *  @param binary Send array elements in binary frame?
+         *  @return Message with complete metadata, for a subscriber that has not seen the previous update
+         */
+        synchronized Message getFull(final MessageFormat format, final boolean binary)
+        {
+            final int i = format.ordinal() * VARIANTS + (binary ? 1 : 0);
+            if (messages[i] == null)
+                messages[i] = encode(format, null, null, metadata, binary, null);
+            return messages[i];
+        }
+
+        /** @param format Message format
+         *  @param binary Send array elements in binary frame?
+         *  @param delta Send only the changed array elements, if that's smaller?
+         *  @return Message with only the changes since the previous update
+         */
+        synchronized Message getChanges(final MessageFormat format, final boolean binary, final boolean delta)
+        {
+            final int[] ranges = delta ? getRanges() : null;
+            final int i = format.ordinal() * VARIANTS + (binary ? 3 : 2) + (ranges != null ? 2 : 0);
+            if (messages[i] == null)
+                messages[i] = encode(format, last_value, last_readonly,
+                                     metadata_changed ? metadata : null, binary, ranges);
+            return messages[i];
+        }
+
+        /** @param delta Send only the changed array elements, if that's smaller?
+         *  @return Binary frame with array elements, <code>null</code> if value is not a supported array
+         */
+        synchronized Message getFrame(final boolean delta)
+        {
+            final int[] ranges = delta ? getRanges() : null;
+            final int i = ranges != null ? 1 : 0;
+            if (! have_frame[i])
+            {
+                final ByteBuffer buf = Vtype2Binary.toFrame(id, value, ranges);
+                if (buf != null)
+                    frames[i] = Message.binary(buf);
+                have_frame[i] = true;
+            }
+            return frames[i];
+        }
+
+        /** @return Ranges of array elements that changed since the previous update,
+         *          <code>null</code> if complete array needs to be sent
+         */
+        private int[] getRanges()
+        {
+            if (! have_ranges)
+            {
+                final byte type = Vtype2Binary.getType(value);
+                if (type != 0  &&  Vtype2Binary.getType(last_value) == type)
+                    ranges = ArrayDelta.compute(Vtype2Binary.getData(last_value), Vtype2Binary.getData(value), type);
+                have_ranges = true;
+            }
+            return ranges;
+        }
+
+        private Message encode(final MessageFormat format, final VType last_value, final Boolean last_readonly,
+                               final Metadata metadata, final boolean binary, final int[] ranges)
+        {
+            try
+            {
+                final int binary_id = binary && Vtype2Binary.getType(value) != 0 ? id : 0;
+                return format.toMessage(Vtype2Json.toJson(name, value, last_value, last_readonly, readonly,
+                                                          binary_id, ranges, original_size, metadata, aggregate, format));
+            }
+            catch (final Exception ex)
+            {
+                logger.log(Level.WARNING, "Cannot encode " + name + " = " + Objects.toString(value), ex);
+                return null;
+            }
+        }
+    }
+
+    /** Source of {@link #id}s */
+    private static final AtomicInteger next_id = new AtomicInteger();
+
+    private final String name;
+
+    /** Server-wide unique ID, used to identify the PV in binary frames */
+    private final int id = next_id.incrementAndGet();
+
+    private volatile PV pv;
+
+    /** SYNC for {@link #start()} and {@link #dispose()} */
+    private final Object lifecycle = new Object();
+
+    /** Has the PV been disposed? SYNC on lifecycle */
+    private boolean disposed = false;
+
+    /** Completed when {@link #start()} finished */
+    private final CompletableFuture<Void> started = new CompletableFuture<>();
+    private AtomicReference<Disposable> subscription = new AtomicReference<>(),
+                                        subscription_access = new AtomicReference<>();
+
+    /** Latest value received from the PV that has not been published, or <code>null</code> */
+    private final AtomicReference<VType> received = new AtomicReference<>();
+
+    /** Did access permissions change since the last update was published? */
+    private final AtomicBoolean access_changed = new AtomicBoolean();
+
+    /** Is the PV scheduled to publish a received value or access change? */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /** Time (ms since epoch) when the next update may be published.
+     *
+     *  <p>Only accessed by the {@link UpdateScheduler}.
+     */
+    private long next_publish = 0;
+
+    /** Task that publishes received values when the throttle period has passed */
+    private final UpdateScheduler.Task publisher = this::publishDue;
+
+    /** Statistics of received values, <code>null</code> if not aggregated */
+    private final Aggregate.Accumulator accumulator;
+
+    /** History of received values, shared with other {@link SharedPV}s of the same name, <code>null</code> if PV has no history */
+    private final History history;
+
+    /** Subscribers
+     *
+     *  <p>SYNC on this for access and to serialize updates to subscribers
+     */
+    private final List<WebSocketPV> subscribers = new ArrayList<>();
+
+    /** Most recent update or <code>null</code> */
+    private volatile Update last_update = null;
+
+    /** Throttle periods of this shared PV */
+    private final int throttle_ms, array_throttle_ms;
+
+    /** @param name PV name */
+    SharedPV(final String name)
+    {
+        this(name, THROTTLE_MS, ARRAY_THROTTLE_MS, false, null);
+    }
+
+    /** @param name PV name
+     *  @param throttle_ms Value throttle
+     *  @param array_throttle_ms Array value throttle
+     *  @param aggregate Include statistics of all values received within the throttle period?
+     *  @param history History to which received values are added, <code>null</code> for none
+     */
+    SharedPV(final String name, final int throttle_ms, final int array_throttle_ms, final boolean aggregate,
+             final History history)
+    {
+        this.name = name;
+        this.throttle_ms = throttle_ms;
+        this.array_throttle_ms = array_throttle_ms;
+        accumulator = aggregate ? new Aggregate.Accumulator() : null;
+        this.history = history;
+    }
+
+    /** @param name PV name
+     *  @param throttle_ms Value throttle
+     *  @param array_throttle_ms Array value throttle
+     *  @param aggregate Include statistics?
+     *  @return Key for shared PV with that name, throttle and aggregation
+     */
+    static String getKey(final String name, final int throttle_ms, final int array_throttle_ms, final boolean aggregate)
+    {
+        String key = name;
+        if (throttle_ms != THROTTLE_MS  ||  array_throttle_ms != ARRAY_THROTTLE_MS)
+            key += " @" + throttle_ms + "/" + array_throttle_ms + "ms";
+        if (aggregate)
+            key += " (aggregate)";
+        return key;
+    }
+
+    /** @return Key for this shared PV */
+    String getKey()
+    {
+        return getKey(name, throttle_ms, array_throttle_ms, isAggregate());
+    }
+
+    /** @return PV name */
+    public String getName()
+    {
+        return name;
+    }
+
+    /** @return Value throttle period */
+    public int getThrottle()
+    {
+        return throttle_ms;
+    }
+
+    /** @return Array value throttle period */
+    public int getArrayThrottle()
+    {
+        return array_throttle_ms;
+    }
+
+    /** @return Does the PV include statistics of all values received within the throttle period? */
+    public boolean isAggregate()
+    {
+        return accumulator != null;
+    }
+
+    /** @return Number of subscribed {@link WebSocketPV}s */
+    public synchronized int getSubscriberCount()
+    {
+        return subscribers.size();
+    }
+
+    /** Start PV
+     *  @throws Exception on error
+     *  @see #dispose()
+     */
+    void start() throws Exception
+    {
+        try
+        {
+            synchronized (lifecycle)
+            {
+                if (! disposed)
+                {
+                    pv = PVPool.getPV(name);
+                    // Updates only remember the latest value,
+                    // the UpdateScheduler then throttles them
+                    subscription.set(pv.onValueEvent().subscribe(this::handleUpdates));
+                    subscription_access.set(pv.onAccessRightsEvent().subscribe(this::handleAccessChanges));
+                }
+            }
+            started.complete(null);
+        }
+        catch (final Exception ex)
+        {
+            started.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    /** Wait until the thread that created the PV has started it
+     *  @throws Exception when the PV could not be started
+     */
+    void awaitStart() throws Exception
+    {
+        try
+        {
+            started.get();
+        }
+        catch (final ExecutionException ex)
+        {
+            if (ex.getCause() instanceof Exception cause)
+                throw cause;
+            throw ex;
+        }
+    }
+
+    /** Add subscriber
+     *
+     *  <p>If there is already a value, the new subscriber
+     *  receives it right away, with complete metadata.
+     *
+     *  @param subscriber {@link WebSocketPV}
+     */
+    synchronized void subscribe(final WebSocketPV subscriber)
+    {
+        subscribers.add(subscriber);
+        final Update update = last_update;
+        if (update != null)
+            subscriber.handleUpdate(update);
+    }
+
+    /** @param subscriber {@link WebSocketPV} to remove
+     *  @return Number of remaining subscribers
+     */
+    synchronized int unsubscribe(final WebSocketPV subscriber)
+    {
+        subscribers.remove(subscriber);
+        return subscribers.size();
+    }
+
+    /** Handle change in value
+     *  @param value Latest value
+     */
+    private void handleUpdates(final VType value)
+    {
+        if (value instanceof VNumber number)
+        {
+            if (accumulator != null)
+                accumulator.add(number.getValue().doubleValue());
+            if (history != null)
+                history.add(number);
+        }
+        received.set(value);
+        schedule();
+    }
+
+    /** Handle change in access permissions
+     *  @param readonly Latest access mode
+     */
+    private void handleAccessChanges(final Boolean readonly)
+    {
+        access_changed.set(true);
+        schedule();
+    }
+
+    /** Schedule publishing unless already scheduled */
+    private void schedule()
+    {
+        if (scheduled.compareAndSet(false, true))
+            UpdateScheduler.schedule(publisher, id);
+    }
+
+    /** Publish received value or access change once the throttle period has passed
+     *
+     *  <p>Arrays are throttled at the (slower) 'array' rate.
+     *
+     *  @param now Current time (ms since epoch)
+     *  @return <code>true</code> when done, <code>false</code> while waiting for the throttle period
+     */
+    private boolean publishDue(final long now)
+    {
+        if (now < next_publish)
+            return false;
+        // Values received from now on schedule another update
+        scheduled.set(false);
+        final VType value = received.getAndSet(null);
+        final boolean access = access_changed.getAndSet(false);
+        if (value != null)
+        {
+            next_publish = now + (value instanceof Array ? array_throttle_ms : throttle_ms);
+            publish(value, accumulator == null ? null : accumulator.take());
+        }
+        else if (access)
+        {
+            next_publish = now + throttle_ms;
+            final Update update = last_update;
+            publish(update == null ? null : update.value, null);
+        }
+        return true;
+    }
+
+    /** Send update to all subscribers
+     *  @param value Value to send
+     *  @param aggregate Statistics to send, <code>null</code> if not aggregated
+     */
+    private synchronized void publish(final VType value, final Aggregate aggregate)
+    {
+        // PV may have been disposed while update was pending
+        final PV safe_pv = pv;
+        if (safe_pv == null)
+            return;
+        final Boolean current_readonly = safe_pv.isReadonly() || !PV_WRITE_SUPPORT;
+        final Update last = last_update;
+        // Keep the previous metadata block unless it changed
+        final Metadata last_metadata = last == null ? null : last.metadata;
+        final Metadata metadata = Metadata.of(value, last_metadata);
+        final Update update = last == null
+            ? new Update(name, id, 1, value, null, current_readonly, null, metadata, true, 0, aggregate)
+            : new Update(name, id, last.sequence + 1, value, last.value, current_readonly, last.readonly,
+                         metadata, metadata != last_metadata, 0, aggregate);
+        // Decimated updates need the previous update, but no further history.
+        // A subscriber that skipped updates thus receives the next one in full,
+        // which also limits the memory held for derived updates
+        if (last != null)
+        {
+            update.previous = last;
+            last.previous = null;
+        }
+        last_update = update;
+        for (final WebSocketPV subscriber : subscribers)
+            subscriber.handleUpdate(update);
+    }
+
+    /** @return Most recent value or null */
+    public VType getLastValue()
+    {
+        final Update update = last_update;
+        return update == null ? null : update.value;
+    }
+
+    /** @param new_value Value to write to PV
+     *  @throws Exception on error
+     */
+    void write(final Object new_value) throws Exception
+    {
+        if (PV_WRITE_SUPPORT)
+            pv.write(new_value);
+        else
+            throw new Exception("PV_WRITE_SUPPORT is disabled");
+    }
+
+    /** Close PV */
+    void dispose()
+    {
+        synchronized (lifecycle)
+        {
+            disposed = true;
+            Disposable sub = subscription.getAndSet(null);
+            if (sub != null)
+            {
+                logger.log(Level.FINE, () -> "Closing subscription for " + name);
+                sub.dispose();
+            }
+
+            sub = subscription_access.getAndSet(null);
+            if (sub != null)
+            {
+                logger.log(Level.FINE, () -> "Closing access subscription for " + name);
+                sub.dispose();
+            }
+
+            final PV safe_pv = pv;
+            pv = null;
+            if (safe_pv != null)
+                PVPool.releasePV(safe_pv);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
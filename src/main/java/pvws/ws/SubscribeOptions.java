@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/** Options of a 'subscribe' request that apply to each of its PVs
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+class SubscribeOptions
+{
+    /** Default options */
+    static final SubscribeOptions DEFAULT = new SubscribeOptions(0, null, SharedPV.THROTTLE_MS, SharedPV.ARRAY_THROTTLE_MS, null, false);
+
+    /** Maximum number of array elements to send, 0 to send all */
+    final int max_points;
+
+    /** View of images to send, <code>null</code> to send complete images */
+    final ImageView image_view;
+
+    /** Throttle period for values and arrays */
+    final int throttle_ms, array_throttle_ms;
+
+    /** Deadband for numeric scalars, <code>null</code> to use the server's deadband for the PV name */
+    final Deadband deadband;
+
+    /** Include statistics of all values received within the throttle period? */
+    final boolean aggregate;
+
+    /** @param max_points Maximum number of array elements to send, 0 to send all
+     *  @param image_view View of images to send, <code>null</code> to send complete images
+     *  @param throttle_ms Throttle period for values
+     *  @param array_throttle_ms Throttle period for arrays
+     *  @param deadband Deadband, <code>null</code> to use the server's deadband for the PV name
+     *  @param aggregate Include statistics of all values received within the throttle period?
+     */
+    SubscribeOptions(final int max_points, final ImageView image_view,
+                     final int throttle_ms, final int array_throttle_ms,
+                     final Deadband deadband, final boolean aggregate)
+    {
+        this.max_points = max_points;
+        this.image_view = image_view;
+        this.throttle_ms = throttle_ms;
+        this.array_throttle_ms = array_throttle_ms;
+        this.deadband = deadband;
+        this.aggregate = aggregate;
+    }
+
+    /** @param other Other options
+     *  @return Do both options subscribe to the same {@link SharedPV}?
+     */
+    boolean isSameSharedPV(final SubscribeOptions other)
+    {
+        return throttle_ms == other.throttle_ms  &&
+               array_throttle_ms == other.array_throttle_ms  &&
+               aggregate == other.aggregate;
+    }
+
+    /** @param name PV name
+     *  @return Deadband for the PV
+     */
+    Deadband getDeadband(final String name)
+    {
+        return deadband != null ? deadband : Deadband.forPV(name);
+    }
+
+    /** @param json Request
+     *  @param field Name of throttle field
+     *  @param default_ms Default throttle period
+     *  @return Requested throttle period, limited to the allowed range, or default
+     */
+    private static int getThrottle(final JsonNode json, final String field, final int default_ms)
+    {
+        final JsonNode node = json.path(field);
+        if (! node.isNumber())
+            return default_ms;
+        return Math.max(SharedPV.THROTTLE_MIN_MS, Math.min(node.asInt(), SharedPV.THROTTLE_MAX_MS));
+    }
+
+    /** @param json 'subscribe' request
+     *  @return Options from request
+     *  @throws Exception on error
+     */
+    static SubscribeOptions fromJson(final JsonNode json) throws Exception
+    {
+        final int max_points = json.path("max_points").asInt(0);
+        if (max_points < 0)
+            throw new Exception("Invalid 'max_points' " + max_points);
+
+        // Image region of interest [ x, y, width, height ] and maximum size
+        final int[] roi = new int[4];
+        final JsonNode roi_node = json.path("roi");
+        if (! roi_node.isMissingNode())
+        {
+            if (! roi_node.isArray()  ||  roi_node.size() != 4)
+                throw new Exception("Expect 'roi' as [ x, y, width, height ]");
+            for (int i=0; i<4; ++i)
+            {
+                final JsonNode item = roi_node.get(i);
+                if (! item.canConvertToInt()  ||  ! item.isIntegralNumber()  ||  item.asInt() < 0)
+                    throw new Exception("Invalid 'roi' " + roi_node);
+                roi[i] = item.asInt();
+            }
+        }
+        final int max_width = json.path("max_width").asInt(0),
+                  max_height = json.path("max_height").asInt(0);
+        if (max_width < 0  ||  max_height < 0)
+            throw new Exception("Invalid 'max_width', 'max_height' " + max_width + ", " + max_height);
+        final ImageView image_view = roi_node.isMissingNode()  &&  max_width == 0  &&  max_height == 0
+                                   ? null
+                                   : new ImageView(roi[0], roi[1], roi[2], roi[3], max_width, max_height);
+
+        // Throttle periods, limited to the range allowed by the server
+        final int throttle_ms = getThrottle(json, "throttle_ms", SharedPV.THROTTLE_MS),
+                  array_throttle_ms = getThrottle(json, "array_throttle_ms", SharedPV.ARRAY_THROTTLE_MS);
+
+        // Deadband as number for absolute deadband or text specification
+        final JsonNode deadband_node = json.path("deadband");
+        final Deadband deadband;
+        if (deadband_node.isMissingNode()  ||  deadband_node.isNull())
+            deadband = null;
+        else
+            deadband = Deadband.parse(deadband_node.asText());
+
+        final boolean aggregate = json.path("aggregate").asBoolean(false);
+
+        if (max_points == 0  &&  image_view == null  &&
+            throttle_ms == DEFAULT.throttle_ms  &&  array_throttle_ms == DEFAULT.array_throttle_ms  &&
+            deadband == null  &&  !aggregate)
+            return DEFAULT;
+        return new SubscribeOptions(max_points, image_view, throttle_ms, array_throttle_ms, deadband, aggregate);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "max_points " + max_points + ", image view " + image_view +
+               ", throttle " + throttle_ms + "/" + array_throttle_ms + " ms" +
+               ", deadband " + deadband +
+               (aggregate ? ", aggregate" : "");
+    }
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import static pvws.PVWebSocketContext.logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/** Server-wide tick that publishes throttled updates
+ *
+ *  <p>Instead of a timer per PV, PVs with a new value
+ *  or an update deferred by a socket's throttle
+ *  add a {@link Task} to one of PV_TICK_THREADS partitions.
+ *  Every PV_TICK_MS, each partition calls its tasks
+ *  until they report that they're done.
+ *  Throttle periods are thus rounded up to the tick period.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+final class UpdateScheduler
+{
+    /** Task to call on each tick until it's done */
+    @FunctionalInterface
+    interface Task
+    {
+        /** @param now Current time (ms since epoch)
+         *  @return <code>true</code> when done, <code>false</code> to be called again on the next tick
+         */
+        boolean tick(long now);
+    }
+
+    /** Tick period */
+    static final int TICK_MS;
+
+    /** Number of partitions, each ticked by one thread */
+    static final int THREADS;
+
+    static
+    {
+        String spec = System.getenv("PV_TICK_MS");
+        if (spec == null)
+            TICK_MS = 50;
+        else
+            TICK_MS = Math.max(1, Integer.parseInt(spec));
+
+        spec = System.getenv("PV_TICK_THREADS");
+        if (spec == null)
+            THREADS = Runtime.getRuntime().availableProcessors();
+        else
+            THREADS = Math.max(1, Integer.parseInt(spec));
+
+        logger.log(Level.INFO, "PV_TICK_MS = " + TICK_MS);
+        logger.log(Level.INFO, "PV_TICK_THREADS = " + THREADS);
+    }
+
+    /** Tasks of one partition */
+    private static class Partition implements Runnable
+    {
+        /** Tasks that were added since the last tick */
+        private final ConcurrentLinkedQueue<Task> added = new ConcurrentLinkedQueue<>();
+
+        /** Tasks that are not done. Only accessed by the tick */
+        private final List<Task> tasks = new ArrayList<>();
+
+        /** Number of tasks, added or waiting */
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public void run()
+        {
+            Task task;
+            while ((task = added.poll()) != null)
+                tasks.add(task);
+
+            // Call all tasks, keep those that are not done
+            final long now = System.currentTimeMillis();
+            int kept = 0;
+            for (int i=0; i<tasks.size(); ++i)
+            {
+                task = tasks.get(i);
+                boolean done;
+                try
+                {
+                    done = task.tick(now);
+                }
+                catch (final Throwable ex)
+                {
+                    logger.log(Level.WARNING, "Update error", ex);
+                    done = true;
+                }
+                if (done)
+                    count.decrementAndGet();
+                else
+                    tasks.set(kept++, task);
+            }
+            tasks.subList(kept, tasks.size()).clear();
+        }
+    }
+
+    private static final Partition[] partitions = new Partition[THREADS];
+
+    static
+    {
+        final AtomicInteger thread_id = new AtomicInteger();
+        final ScheduledExecutorService ticks = Executors.newScheduledThreadPool(THREADS, runnable ->
+        {
+            final Thread thread = new Thread(runnable, "PVWS Tick " + thread_id.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i=0; i<THREADS; ++i)
+        {
+            partitions[i] = new Partition();
+            ticks.scheduleAtFixedRate(partitions[i], TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Add task
+     *
+     *  <p>Caller must avoid adding the same task again while it's not done.
+     *
+     *  @param task Task to call on the next tick
+     *  @param key Key that selects the partition, for example an ID
+     */
+    static void schedule(final Task task, final int key)
+    {
+        final Partition partition = partitions[Math.floorMod(key, THREADS)];
+        partition.count.incrementAndGet();
+        partition.added.add(task);
+    }
+
+    /** @return Number of tasks that are waiting for a tick */
+    static int getScheduledCount()
+    {
+        int count = 0;
+        for (Partition partition : partitions)
+            count += partition.count.get();
+        return count;
+    }
+}
@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.epics.util.array.ListNumber;
+import org.epics.vtype.Time;
+import org.epics.vtype.VByteArray;
+import org.epics.vtype.VDoubleArray;
+import org.epics.vtype.VFloatArray;
+import org.epics.vtype.VImage;
+import org.epics.vtype.VLongArray;
+import org.epics.vtype.VNumberArray;
+import org.epics.vtype.VImageDataType;
+import org.epics.vtype.VShortArray;
+import org.epics.vtype.VType;
+import org.epics.vtype.VULongArray;
+
+/** Map array or image {@link VType} to binary web socket frame
+ *
+ *  <p>Used when the client subscribed with "binary": true.
+ *  The JSON 'update' then carries the metadata and an "id",
+ *  while the array elements follow in a binary frame.
+ *
+ *  <p>Frame layout, all little endian:
+ *  <pre>
+ *  Offset  Size  Content
+ *       0     4  PV id, same as "id" in JSON 'update'
+ *       4     1  Element type, see TYPE_* constants
+ *       5     3  Reserved, 0
+ *       8     8  Time stamp seconds
+ *      16     4  Time stamp nanoseconds
+ *      20     4  Number of elements
+ *      24   ...  Elements
+ *  </pre>
+ *  The header size is a multiple of 8 so that clients
+ *  can view the elements as a typed array without copying.
+ *
+ *  <p>When the {@link #FLAG_DELTA} bit is set in the byte at offset 5,
+ *  the frame only contains changed elements, see {@link ArrayDelta}.
+ *  The header is then followed by
+ *  <pre>
+ *  Offset  Size  Content
+ *      24     4  Number of ranges, R
+ *      28     4  Size of the complete array
+ *      32   8*R  Ranges, each int32 start index and int32 element count
+ *  32+8*R   ...  Elements of all ranges
+ *  </pre>
+ *  The "Number of elements" in the header is then the total count of all ranges.
+ *
+ *  @author Kay Kasemir
+ */
+public class Vtype2Binary
+{
+    /** Size of the frame header */
+    public static final int HEADER_SIZE = 24;
+
+    /** Element type for 64 bit double */
+    public static final byte TYPE_DOUBLE = 1;
+
+    /** Element type for 32 bit float */
+    public static final byte TYPE_FLOAT = 2;
+
+    /** Element type for 16 bit short */
+    public static final byte TYPE_SHORT = 3;
+
+    /** Element type for 32 bit int */
+    public static final byte TYPE_INT = 4;
+
+    /** Element type for 8 bit byte */
+    public static final byte TYPE_BYTE = 5;
+
+    /** Element type for 64 bit long */
+    public static final byte TYPE_LONG = 6;
+
+    /** Flag for frame that only contains changed elements */
+    public static final byte FLAG_DELTA = 1;
+
+    /** @param value Value
+     *  @return Element type or 0 if value is not supported as a binary frame
+     */
+    public static byte getType(final VType value)
+    {
+        if (value instanceof VByteArray)
+            return TYPE_BYTE;
+        if (value instanceof VDoubleArray)
+            return TYPE_DOUBLE;
+        if (value instanceof VFloatArray)
+            return TYPE_FLOAT;
+        if (value instanceof VShortArray)
+            return TYPE_SHORT;
+        if (value instanceof VLongArray  ||  value instanceof VULongArray)
+            return TYPE_LONG;
+        if (value instanceof VNumberArray)
+            return TYPE_INT;
+        if (value instanceof VImage image)
+            return getType(image.getDataType());
+        return 0;
+    }
+
+    /** @param type Image data type
+     *  @return Element type used to send the pixels
+     */
+    public static byte getType(final VImageDataType type)
+    {
+        return switch (type)
+        {
+            case pvDouble          -> TYPE_DOUBLE;
+            case pvFloat           -> TYPE_FLOAT;
+            case pvLong, pvULong   -> TYPE_LONG;
+            case pvInt, pvUInt     -> TYPE_INT;
+            case pvShort, pvUShort -> TYPE_SHORT;
+            default                -> TYPE_BYTE;
+        };
+    }
+
+    /** @param value Value of a supported type, see {@link #getType(VType)}
+     *  @return Array elements or image pixels
+     */
+    static ListNumber getData(final VType value)
+    {
+        if (value instanceof VImage image)
+            return image.getData();
+        return ((VNumberArray) value).getData();
+    }
+
+    /** @param id PV id
+     *  @param value Value
+     *  @return Binary frame or <code>null</code> if value is not supported as a binary frame
+     */
+    public static ByteBuffer toFrame(final int id, final VType value)
+    {
+        return toFrame(id, value, null);
+    }
+
+    /** @param id PV id
+     *  @param value Value
+     *  @param ranges Ranges of changed elements, see {@link ArrayDelta}, or <code>null</code> to send all elements
+     *  @return Binary frame or <code>null</code> if value is not supported as a binary frame
+     */
+    public static ByteBuffer toFrame(final int id, final VType value, final int[] ranges)
+    {
+        final byte type = getType(value);
+        if (type == 0)
+            return null;
+
+        final ListNumber data = getData(value);
+        final int N = ranges == null ? data.size() : ArrayDelta.countElements(ranges);
+        final int range_bytes = ranges == null ? 0 : 2*Integer.BYTES + ranges.length * Integer.BYTES;
+
+        final ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + range_bytes + N * ArrayPacker.getElementSize(type));
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(id);
+        buf.put(type);
+        buf.put(ranges == null ? 0 : FLAG_DELTA);
+        buf.putShort((short) 0);
+        final Time time = Time.timeOf(value);
+        if (time != null)
+        {
+            buf.putLong(time.getTimestamp().getEpochSecond());
+            buf.putInt(time.getTimestamp().getNano());
+        }
+        else
+        {
+            buf.putLong(0);
+            buf.putInt(0);
+        }
+        buf.putInt(N);
+
+        if (ranges == null)
+            ArrayPacker.put(buf, data, type);
+        else
+        {
+            buf.putInt(ranges.length / 2);
+            buf.putInt(data.size());
+            for (int range : ranges)
+                buf.putInt(range);
+            ArrayPacker.put(buf, data, type, ranges);
+        }
+        buf.flip();
+        return buf;
+    }
+}
@@ -6,107 +6,269 @@
  ******************************************************************************/
 package pvws.ws;
 
-import static pvws.PVWebSocketContext.json_factory;
-
-import java.io.ByteArrayOutputStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.DoubleBuffer;
-import java.nio.FloatBuffer;
-import java.nio.ShortBuffer;
-import java.nio.IntBuffer;
-import java.nio.charset.Charset;
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
-import java.util.Base64;
-
-import org.epics.util.array.ListByte;
+import java.util.List;
+
+import org.epics.util.array.ListBoolean;
 import org.epics.util.array.ListNumber;
-import org.epics.util.stats.Range;
 import org.epics.vtype.AlarmSeverity;
-import org.epics.vtype.Display;
 import org.epics.vtype.Time;
+import org.epics.vtype.VBooleanArray;
 import org.epics.vtype.VByteArray;
 import org.epics.vtype.VDouble;
 import org.epics.vtype.VDoubleArray;
 import org.epics.vtype.VEnum;
+import org.epics.vtype.VEnumArray;
 import org.epics.vtype.VFloat;
 import org.epics.vtype.VFloatArray;
+import org.epics.vtype.VImage;
+import org.epics.vtype.VLongArray;
 import org.epics.vtype.VNumber;
 import org.epics.vtype.VNumberArray;
 import org.epics.vtype.VShortArray;
 import org.epics.vtype.VString;
+import org.epics.vtype.VStringArray;
+import org.epics.vtype.VTable;
 import org.epics.vtype.VType;
+import org.epics.vtype.VULongArray;
 
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
 
 /** Map {@link VType} to JSON
+ *
+ *  <p>Base64 encoding of arrays uses the default Jackson variant,
+ *  which matches the basic java.util.Base64 encoder.
+ *
  *  @author Kay Kasemir
  */
 @SuppressWarnings("nls")
 public class Vtype2Json
 {
-    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // Field names and common values, pre-serialized
+    static final SerializedString TYPE = new SerializedString("type"),
+                                  UPDATE = new SerializedString("update"),
+                                  PV = new SerializedString("pv"),
+                                  VTYPE = new SerializedString("vtype"),
+                                  SEVERITY = new SerializedString("severity"),
+                                  VALUE = new SerializedString("value"),
+                                  TEXT = new SerializedString("text"),
+                                  NAN = new SerializedString("NaN"),
+                                  ID = new SerializedString("id"),
+                                  READONLY = new SerializedString("readonly"),
+                                  SECONDS = new SerializedString("seconds"),
+                                  NANOS = new SerializedString("nanos"),
+                                  LABELS = new SerializedString("labels"),
+                                  B64DBL = new SerializedString("b64dbl"),
+                                  B64FLT = new SerializedString("b64flt"),
+                                  B64SRT = new SerializedString("b64srt"),
+                                  B64INT = new SerializedString("b64int"),
+                                  B64BYT = new SerializedString("b64byt"),
+                                  B64LNG = new SerializedString("b64lng"),
+                                  B64BIT = new SerializedString("b64bit"),
+                                  NAME = new SerializedString("name"),
+                                  ROWS = new SerializedString("rows"),
+                                  COLUMNS = new SerializedString("columns"),
+                                  WIDTH = new SerializedString("width"),
+                                  HEIGHT = new SerializedString("height"),
+                                  DATATYPE = new SerializedString("datatype"),
+                                  COLOR = new SerializedString("color"),
+                                  SIZE = new SerializedString("size"),
+                                  RANGES = new SerializedString("ranges"),
+                                  ORIGINAL_SIZE = new SerializedString("original_size");
+
+    /** Severity names, indexed by ordinal */
+    private static final SerializedString[] SEVERITIES;
+
+    static
+    {
+        final AlarmSeverity[] severities = AlarmSeverity.values();
+        SEVERITIES = new SerializedString[severities.length];
+        for (int i=0; i<severities.length; ++i)
+            SEVERITIES[i] = new SerializedString(severities[i].name());
+    }
+
+    /** @param name PV Name
+     *  @param value Most recent value
+     *  @param last_value Previous value or <code>null</code>, used to detect changes
+     *  @param last_readonly Was PV read-only?
+     *  @param readonly Is PV read-only right now?
+     *  @return UTF-8 bytes of JSON text
+     *  @throws Exception on error
+     */
+    public static byte[] toJson(final String name, final VType value, final VType last_value, final Boolean last_readonly, final Boolean readonly) throws Exception
+    {
+        final Metadata last_metadata = last_value == null ? null : Metadata.of(last_value, null);
+        final Metadata metadata = Metadata.of(value, last_metadata);
+        return toJson(name, value, last_value, last_readonly, readonly, 0, null, 0,
+                      metadata == last_metadata ? null : metadata, null, MessageFormat.JSON);
+    }
 
     /** @param name PV Name
      *  @param value Most recent value
      *  @param last_value Previous value or <code>null</code>, used to detect changes
      *  @param last_readonly Was PV read-only?
      *  @param readonly Is PV read-only right now?
-     *  @return JSON text
+     *  @param binary_id PV id for array elements sent as {@link Vtype2Binary} frame, or 0 to include them as base64
+     *  @param ranges Ranges of changed array elements to send instead of the complete array, see {@link ArrayDelta}, or <code>null</code>
+     *  @param original_size Array size before decimation, see {@link ArrayDecimator}, or 0
+     *  @param metadata Metadata to include, <code>null</code> if client already has it
+     *  @param aggregate Statistics to include, <code>null</code> if not aggregated
+     *  @param format Format of the message
+     *  @return UTF-8 bytes of JSON text, or bytes of other format
+     *  @throws Exception on error
+     */
+    public static byte[] toJson(final String name, final VType value, final VType last_value, final Boolean last_readonly, final Boolean readonly,
+                                final int binary_id, final int[] ranges, final int original_size,
+                                final Metadata metadata, final Aggregate aggregate,
+                                final MessageFormat format) throws Exception
+    {
+        final JsonEncoder encoder = JsonEncoder.get(format);
+        try
+        {
+            final JsonGenerator g = encoder.start();
+            g.writeStartObject();
+            g.writeFieldName(TYPE);
+            g.writeString(UPDATE);
+            g.writeFieldName(PV);
+            g.writeString(name);
+
+            if (value instanceof VNumber v)
+                handleNumber(g, v, last_value);
+            else if (value instanceof VString v)
+                handleString(g, v, last_value);
+            else if (value instanceof VEnum v)
+                handleEnum(g, v, last_value);
+            else if (value instanceof VByteArray v)
+                handleBytes(g, v, last_value, binary_id, ranges);
+
+            // Serialize double and float arrays as b64dbl
+            else if (value instanceof VDoubleArray v)
+                handleDoubles(g, v, last_value, binary_id, ranges);
+            else if (value instanceof VFloatArray v)
+                handleFloats(g, v, last_value, binary_id, ranges);
+            else if (value instanceof VShortArray v)
+                handleShorts(g, v, last_value, binary_id, ranges);
+            else if (value instanceof VLongArray  ||  value instanceof VULongArray)
+                handleLongs(g, (VNumberArray) value, last_value, binary_id, ranges);
+
+            // Serialize remaining number arrays (int) as b64int
+            else if (value instanceof VNumberArray v)
+                handleInts(g, v, last_value, binary_id, ranges);
+
+            else if (value instanceof VStringArray v)
+                handleStrings(g, v, last_value);
+            else if (value instanceof VEnumArray v)
+                handleEnums(g, v, last_value);
+            else if (value instanceof VBooleanArray v)
+                handleBooleans(g, v, last_value);
+            else if (value instanceof VTable v)
+                handleTable(g, v, last_value);
+            else if (value instanceof VImage v)
+                handleImage(g, v, last_value, binary_id, ranges);
+
+            else if (value != null)
+            {
+                // Other types, for example VStatistics, as text
+                g.writeFieldName(TEXT);
+                g.writeString(value.toString());
+            }
+            // null: Neither 'value' nor 'text'
+
+            // Units, limits, labels initially and whenever they change
+            if (metadata != null)
+                metadata.write(g);
+
+            // Statistics of all values since the previous update
+            if (aggregate != null)
+                aggregate.write(g);
+
+            if (original_size > 0)
+            {
+                g.writeFieldName(ORIGINAL_SIZE);
+                g.writeNumber(original_size);
+            }
+
+            // Change in read/write access?
+            if (last_readonly == null || !last_readonly.equals(readonly))
+            {
+                g.writeFieldName(READONLY);
+                g.writeBoolean(readonly);
+            }
+
+            final Time time = Time.timeOf(value);
+            if (time != null)
+            {
+                g.writeFieldName(SECONDS);
+                g.writeNumber(time.getTimestamp().getEpochSecond());
+                g.writeFieldName(NANOS);
+                g.writeNumber(time.getTimestamp().getNano());
+            }
+
+            g.writeEndObject();
+            return encoder.finish();
+        }
+        catch (final Exception ex)
+        {
+            encoder.discard();
+            throw ex;
+        }
+    }
+
+    /** @param g {@link JsonGenerator}
+     *  @param severity Severity to write
+     *  @throws Exception on error
+     */
+    private static void writeSeverity(final JsonGenerator g, final AlarmSeverity severity) throws Exception
+    {
+        g.writeFieldName(SEVERITY);
+        g.writeString(SEVERITIES[severity.ordinal()]);
+    }
+
+    /** Write array elements
+     *
+     *  @param g {@link JsonGenerator}
+     *  @param data Array elements
+     *  @param type Element type, one of the {@link Vtype2Binary} TYPE_* constants
+     *  @param field Field for base64 encoded elements
+     *  @param binary_id PV id for array elements sent as {@link Vtype2Binary} frame, or 0 to include them as base64
+     *  @param ranges Ranges of changed elements or <code>null</code> to send all elements
+     *  @throws Exception on error
+     */
+    private static void writeElements(final JsonGenerator g, final ListNumber data, final byte type, final SerializedString field,
+                                      final int binary_id, final int[] ranges) throws Exception
+    {
+        if (binary_id > 0)
+        {   // Elements, or changed ranges, follow in binary frame
+            g.writeFieldName(ID);
+            g.writeNumber(binary_id);
+            return;
+        }
+
+        if (ranges == null)
+        {
+            g.writeFieldName(field);
+            g.writeBinary(ArrayPacker.toBytes(data, type));
+        }
+        else
+        {   // Only changed elements, client patches them into its copy of the array
+            g.writeFieldName(SIZE);
+            g.writeNumber(data.size());
+            g.writeFieldName(RANGES);
+            g.writeArray(ranges, 0, ranges.length);
+            g.writeFieldName(field);
+            g.writeBinary(ArrayPacker.toBytes(data, type, ranges));
+        }
+    }
+
+    /** @param g {@link JsonGenerator}
+     *  @param value Value for which to write the "vtype"
      *  @throws Exception on error
      */
-    public static String toJson(final String name, final VType value, final VType last_value, final Boolean last_readonly, final Boolean readonly) throws Exception
+    private static void writeVType(final JsonGenerator g, final VType value) throws Exception
     {
-        final ByteArrayOutputStream buf = new ByteArrayOutputStream();
-        final JsonGenerator g = json_factory.createGenerator(buf);
-        g.writeStartObject();
-        g.writeStringField("type", "update");
-        g.writeStringField("pv", name);
-
-        if (value instanceof VNumber v)
-            handleNumber(g, v, last_value);
-        else if (value instanceof VString v)
-            handleString(g, v, last_value);
-        else if (value instanceof VEnum v)
-            handleEnum(g, v, last_value);
-        else if (value instanceof VByteArray v)
-            handleBytes(g, v, last_value);
-
-        // Serialize double and float arrays as b64dbl
-        else if (value instanceof VDoubleArray v)
-            handleDoubles(g, v, last_value);
-        else if (value instanceof VFloatArray v)
-            handleFloats(g, v, last_value);
-        else if (value instanceof VShortArray v)
-        	handleShorts(g, v, last_value);
-
-        // Serialize remaining number arrays (int) as b64int
-        else if (value instanceof VNumberArray v)
-            handleInts(g, v, last_value);
-
-        else if (value != null)
-        {
-            // TODO Are there more types that need to be handled?
-        	// For now pass as text
-            g.writeStringField("text", value.toString());
-        }
-        // null: Neither 'value' nor 'text'
-
-        // Change in read/write access?
-        if (last_readonly == null || !last_readonly.equals(readonly))
-            g.writeBooleanField("readonly", readonly);
-
-        final Time time = Time.timeOf(value);
-        if (time != null)
-        {
-            g.writeNumberField("seconds", time.getTimestamp().getEpochSecond());
-            g.writeNumberField("nanos", time.getTimestamp().getNano());
-        }
-
-        g.writeEndObject();
-        g.flush();
-        return buf.toString();
+        g.writeFieldName(VTYPE);
+        g.writeString(VType.typeOf(value).getSimpleName());
     }
 
 
@@ -116,285 +278,408 @@ public class Vtype2Json
         if (last_value == null)
         {
             // Initially, add complete metadata
-            g.writeStringField("vtype", VType.typeOf(value).getSimpleName());
+            writeVType(g, value);
             // Initial severity
-            g.writeStringField("severity", severity.name());
+            writeSeverity(g, severity);
         }
         else
         {
             // Add severity if it changed
             if ((last_value instanceof VString v) &&
                 v.getAlarm().getSeverity() != severity)
-                g.writeStringField("severity", severity.name());
+                writeSeverity(g, severity);
         }
 
-        g.writeStringField("text", value.getValue());
+        g.writeFieldName(TEXT);
+        g.writeString(value.getValue());
     }
 
 
-    private static void handleLongString(final JsonGenerator g, final VByteArray value) throws Exception
+    private static void handleNumber(final JsonGenerator g, final VNumber value, final VType last_value) throws Exception
     {
-        g.writeStringField("severity", value.getAlarm().getSeverity().name());
+        final AlarmSeverity severity = value.getAlarm().getSeverity();
+        if (last_value == null)
+        {
+            // Initially, add complete metadata
+            writeVType(g, value);
+            // Initial severity
+            writeSeverity(g, severity);
+        }
+        else
+        {
+            // Add severity if it changed
+            if ((last_value instanceof VNumber v)  &&
+                v.getAlarm().getSeverity() != severity)
+                writeSeverity(g, severity);
+        }
 
-        final ListByte data = value.getData();
-        final byte[] bytes = new byte[data.size()];
-        // Copy bytes until end or '\0'
-        int len = 0;
-        while (len<bytes.length)
+        if (value instanceof VDouble  ||  value instanceof VFloat)
         {
-            final byte b = data.getByte(len);
-            if (b == 0)
-                break;
+            final double dbl = value.getValue().doubleValue();
+            g.writeFieldName(VALUE);
+            if (Double.isFinite(dbl))
+                g.writeNumber(dbl);
             else
-                bytes[len++] = b;
+                g.writeString(NAN);
+        }
+        else
+        {
+            g.writeFieldName(VALUE);
+            g.writeNumber(value.getValue().longValue());
         }
-        // Use actual 'len', not data.size()
-        g.writeStringField("text", new String(bytes, 0, len, UTF8));
     }
 
-    private static void handleDisplay(final JsonGenerator g, final Display display) throws Exception
+
+    private static void handleDoubles(final JsonGenerator g, final VNumberArray value, final VType last_value, final int binary_id, final int[] ranges) throws Exception
     {
-        if (display == null)
-            return;
+        final AlarmSeverity severity = value.getAlarm().getSeverity();
+        if (last_value == null)
+        {
+            // Initially, add complete metadata
+            writeVType(g, value);
+            // Initial severity
+            writeSeverity(g, severity);
+        }
+        else
+        {
+            // Add severity if it changed
+            if ((last_value instanceof VNumberArray v)  &&
+                v.getAlarm().getSeverity() != severity)
+                writeSeverity(g, severity);
+        }
 
-        g.writeStringField("units", display.getUnit());
-        g.writeStringField("description", display.getDescription());
+        writeElements(g, value.getData(), Vtype2Binary.TYPE_DOUBLE, B64DBL, binary_id, ranges);
+    }
 
-        final NumberFormat format =  display.getFormat();
-        if (format instanceof DecimalFormat d)
-            g.writeNumberField("precision", d.getMaximumFractionDigits());
 
-        Range range = display.getDisplayRange();
-        if (range != null)
+    private static void handleFloats(final JsonGenerator g, final VNumberArray value, final VType last_value, final int binary_id, final int[] ranges) throws Exception
+    {
+        final AlarmSeverity severity = value.getAlarm().getSeverity();
+        if (last_value == null)
+        {
+            // Initially, add complete metadata
+            writeVType(g, value);
+            // Initial severity
+            writeSeverity(g, severity);
+        }
+        else
         {
-            g.writeNumberField("min", range.getMinimum());
-            g.writeNumberField("max", range.getMaximum());
+            // Add severity if it changed
+            if ((last_value instanceof VNumberArray v)  &&
+                v.getAlarm().getSeverity() != severity)
+                writeSeverity(g, severity);
         }
 
-        range = display.getWarningRange();
-        if (range != null)
+        writeElements(g, value.getData(), Vtype2Binary.TYPE_FLOAT, B64FLT, binary_id, ranges);
+    }
+
+
+    private static void handleShorts(final JsonGenerator g, final VNumberArray value, final VType last_value, final int binary_id, final int[] ranges) throws Exception
+    {
+        final AlarmSeverity severity = value.getAlarm().getSeverity();
+        if (last_value == null)
         {
-            g.writeNumberField("warn_low", range.getMinimum());
-            g.writeNumberField("warn_high", range.getMaximum());
+            // Initially, add complete metadata
+            writeVType(g, value);
+            // Initial severity
+            writeSeverity(g, severity);
         }
-        range = display.getAlarmRange();
-        if (range != null)
+        else
         {
-            g.writeNumberField("alarm_low", range.getMinimum());
-            g.writeNumberField("alarm_high", range.getMaximum());
+            // Add severity if it changed
+            if ((last_value instanceof VNumberArray v)  &&
+                v.getAlarm().getSeverity() != severity)
+                writeSeverity(g, severity);
         }
+
+        writeElements(g, value.getData(), Vtype2Binary.TYPE_SHORT, B64SRT, binary_id, ranges);
     }
 
-    private static void handleNumber(final JsonGenerator g, final VNumber value, final VType last_value) throws Exception
+
+    private static void handleBytes(final JsonGenerator g, final VNumberArray value, final VType last_value, final int binary_id, final int[] ranges) throws Exception
     {
         final AlarmSeverity severity = value.getAlarm().getSeverity();
         if (last_value == null)
         {
             // Initially, add complete metadata
-            g.writeStringField("vtype", VType.typeOf(value).getSimpleName());
-            handleDisplay(g, value.getDisplay());
+            writeVType(g, value);
             // Initial severity
-            g.writeStringField("severity", severity.name());
+            writeSeverity(g, severity);
         }
         else
         {
             // Add severity if it changed
-            if ((last_value instanceof VNumber v)  &&
+            if ((last_value instanceof VNumberArray v)  &&
                 v.getAlarm().getSeverity() != severity)
-                g.writeStringField("severity", severity.name());
+                writeSeverity(g, severity);
         }
 
-        if (value instanceof VDouble  ||  value instanceof VFloat)
+        writeElements(g, value.getData(), Vtype2Binary.TYPE_BYTE, B64BYT, binary_id, ranges);
+    }
+
+
+    private static void handleInts(final JsonGenerator g, final VNumberArray value, final VType last_value, final int binary_id, final int[] ranges) throws Exception
+    {
+        final AlarmSeverity severity = value.getAlarm().getSeverity();
+        if (last_value == null)
         {
-            final double dbl = value.getValue().doubleValue();
-            if (Double.isFinite(dbl))
-                g.writeNumberField("value", dbl);
-            else
-                g.writeStringField("value", "NaN");
+            // Initially, add complete metadata
+            writeVType(g, value);
+            // Initial severity
+            writeSeverity(g, severity);
         }
         else
-            g.writeNumberField("value", value.getValue().longValue());
+        {
+            // Add severity if it changed
+            if ((last_value instanceof VNumberArray v)  &&
+                v.getAlarm().getSeverity() != severity)
+                writeSeverity(g, severity);
+        }
+
+        writeElements(g, value.getData(), Vtype2Binary.TYPE_INT, B64INT, binary_id, ranges);
     }
 
 
-    private static void handleDoubles(final JsonGenerator g, final VNumberArray value, final VType last_value) throws Exception
+    private static void handleEnum(final JsonGenerator g, final VEnum value, final VType last_value) throws Exception
     {
         final AlarmSeverity severity = value.getAlarm().getSeverity();
         if (last_value == null)
         {
             // Initially, add complete metadata
-            g.writeStringField("vtype", VType.typeOf(value).getSimpleName());
-            handleDisplay(g, value.getDisplay());
+            writeVType(g, value);
             // Initial severity
-            g.writeStringField("severity", severity.name());
+            writeSeverity(g, severity);
         }
         else
         {
             // Add severity if it changed
-            if ((last_value instanceof VNumber v)  &&
+            if ((last_value instanceof VEnum v)  &&
                 v.getAlarm().getSeverity() != severity)
-                g.writeStringField("severity", severity.name());
+                writeSeverity(g, severity);
         }
 
-        // Convert into Base64 double array
-        // System.out.println("Encode: " + value.getData());
-        final ListNumber data = value.getData();
-        final int N = data.size();
-        final ByteBuffer buf = ByteBuffer.allocate(N * Double.BYTES);
-        buf.order(ByteOrder.LITTLE_ENDIAN);
-        final DoubleBuffer dblbuf = buf.asDoubleBuffer();
-        for (int i=0; i<N; ++i)
-            dblbuf.put(data.getDouble(i));
-        g.writeStringField("b64dbl", Base64.getEncoder().encodeToString(buf.array()));
+        g.writeFieldName(VALUE);
+        g.writeNumber(value.getIndex());
+        g.writeFieldName(TEXT);
+        g.writeString(value.getValue());
     }
 
 
-    private static void handleFloats(final JsonGenerator g, final VNumberArray value, final VType last_value) throws Exception
+    private static void handleLongs(final JsonGenerator g, final VNumberArray value, final VType last_value, final int binary_id, final int[] ranges) throws Exception
     {
         final AlarmSeverity severity = value.getAlarm().getSeverity();
         if (last_value == null)
         {
             // Initially, add complete metadata
-            g.writeStringField("vtype", VType.typeOf(value).getSimpleName());
-            handleDisplay(g, value.getDisplay());
+            writeVType(g, value);
             // Initial severity
-            g.writeStringField("severity", severity.name());
+            writeSeverity(g, severity);
         }
         else
         {
             // Add severity if it changed
-            if ((last_value instanceof VNumber v)  &&
+            if ((last_value instanceof VNumberArray v)  &&
                 v.getAlarm().getSeverity() != severity)
-                g.writeStringField("severity", severity.name());
+                writeSeverity(g, severity);
         }
 
-        final ListNumber data = value.getData();
-        final int N = data.size();
-        final ByteBuffer buf = ByteBuffer.allocate(N * Float.BYTES);
-        buf.order(ByteOrder.LITTLE_ENDIAN);
-        final FloatBuffer fltbuf = buf.asFloatBuffer();
-        for (int i=0; i<N; ++i)
-            fltbuf.put(data.getFloat(i));
-        g.writeStringField("b64flt", Base64.getEncoder().encodeToString(buf.array()));
+        writeElements(g, value.getData(), Vtype2Binary.TYPE_LONG, B64LNG, binary_id, ranges);
     }
 
 
-    private static void handleShorts(final JsonGenerator g, final VNumberArray value, final VType last_value) throws Exception
+    private static void handleStrings(final JsonGenerator g, final VStringArray value, final VType last_value) throws Exception
     {
         final AlarmSeverity severity = value.getAlarm().getSeverity();
         if (last_value == null)
         {
             // Initially, add complete metadata
-            g.writeStringField("vtype", VType.typeOf(value).getSimpleName());
-            handleDisplay(g, value.getDisplay());
+            writeVType(g, value);
             // Initial severity
-            g.writeStringField("severity", severity.name());
+            writeSeverity(g, severity);
         }
         else
         {
             // Add severity if it changed
-            if ((last_value instanceof VNumber v)  &&
+            if ((last_value instanceof VStringArray v)  &&
                 v.getAlarm().getSeverity() != severity)
-                g.writeStringField("severity", severity.name());
+                writeSeverity(g, severity);
         }
 
-        final ListNumber data = value.getData();
-        final int N = data.size();
-        final ByteBuffer buf = ByteBuffer.allocate(N * Short.BYTES);
-        buf.order(ByteOrder.LITTLE_ENDIAN);
-        final ShortBuffer srtbuf = buf.asShortBuffer();
-        for (int i=0; i<N; ++i)
-        	srtbuf.put(data.getShort(i));
-        g.writeStringField("b64srt", Base64.getEncoder().encodeToString(buf.array()));
+        g.writeFieldName(VALUE);
+        writeStrings(g, value.getData());
     }
 
 
-    private static void handleBytes(final JsonGenerator g, final VNumberArray value, final VType last_value) throws Exception
+    private static void handleEnums(final JsonGenerator g, final VEnumArray value, final VType last_value) throws Exception
     {
         final AlarmSeverity severity = value.getAlarm().getSeverity();
         if (last_value == null)
         {
-            // Initially, add complete metadata
-            g.writeStringField("vtype", VType.typeOf(value).getSimpleName());
-            handleDisplay(g, value.getDisplay());
+            // Initially, add complete metadata.
+            // Labels are in the metadata block.
+            writeVType(g, value);
             // Initial severity
-            g.writeStringField("severity", severity.name());
+            writeSeverity(g, severity);
         }
         else
         {
             // Add severity if it changed
-            if ((last_value instanceof VNumber v)  &&
+            if ((last_value instanceof VEnumArray v)  &&
                 v.getAlarm().getSeverity() != severity)
-                g.writeStringField("severity", severity.name());
+                writeSeverity(g, severity);
         }
 
-        // Convert into Base64 int64 array
-        final ListNumber data = value.getData();
-        final int N = data.size();
-        final ByteBuffer buf = ByteBuffer.allocate(N * Byte.BYTES);
-        buf.order(ByteOrder.LITTLE_ENDIAN);
+        // Send indices, client looks up labels
+        final ListNumber indices = value.getIndexes();
+        final int N = indices.size();
+        g.writeFieldName(VALUE);
+        g.writeStartArray();
         for (int i=0; i<N; ++i)
-        	buf.put(data.getByte(i));
-        g.writeStringField("b64byt", Base64.getEncoder().encodeToString(buf.array()));
+            g.writeNumber(indices.getInt(i));
+        g.writeEndArray();
     }
 
 
-    private static void handleInts(final JsonGenerator g, final VNumberArray value, final VType last_value) throws Exception
+    private static void handleBooleans(final JsonGenerator g, final VBooleanArray value, final VType last_value) throws Exception
     {
         final AlarmSeverity severity = value.getAlarm().getSeverity();
         if (last_value == null)
         {
             // Initially, add complete metadata
-            g.writeStringField("vtype", VType.typeOf(value).getSimpleName());
-            handleDisplay(g, value.getDisplay());
+            writeVType(g, value);
             // Initial severity
-            g.writeStringField("severity", severity.name());
+            writeSeverity(g, severity);
         }
         else
         {
             // Add severity if it changed
-            if ((last_value instanceof VNumber v)  &&
+            if ((last_value instanceof VBooleanArray v)  &&
                 v.getAlarm().getSeverity() != severity)
-                g.writeStringField("severity", severity.name());
+                writeSeverity(g, severity);
         }
 
-        // Convert into Base64 int64 array
-        // System.out.println("Encode: " + value.getData());
-        final ListNumber data = value.getData();
-        final int N = data.size();
-        final ByteBuffer buf = ByteBuffer.allocate(N * Integer.BYTES);
-        buf.order(ByteOrder.LITTLE_ENDIAN);
-        final IntBuffer dblbuf = buf.asIntBuffer();
-        for (int i=0; i<N; ++i)
-            dblbuf.put(data.getInt(i));
-        g.writeStringField("b64int", Base64.getEncoder().encodeToString(buf.array()));
+        writeBits(g, value.getData());
     }
 
 
-    private static void handleEnum(final JsonGenerator g, final VEnum value, final VType last_value) throws Exception
+    private static void handleTable(final JsonGenerator g, final VTable value, final VType last_value) throws Exception
+    {
+        if (last_value == null)
+            writeVType(g, value);
+
+        g.writeFieldName(ROWS);
+        g.writeNumber(value.getRowCount());
+
+        // One object per column with name and elements in the same encoding as arrays
+        g.writeFieldName(COLUMNS);
+        g.writeStartArray();
+        final int columns = value.getColumnCount();
+        for (int c=0; c<columns; ++c)
+        {
+            g.writeStartObject();
+            g.writeFieldName(NAME);
+            g.writeString(value.getColumnName(c));
+            final Object data = value.getColumnData(c);
+            if (data instanceof ListNumber numbers)
+            {
+                final Class<?> type = value.getColumnType(c);
+                if (type == double.class)
+                    writeElements(g, numbers, Vtype2Binary.TYPE_DOUBLE, B64DBL, 0, null);
+                else if (type == float.class)
+                    writeElements(g, numbers, Vtype2Binary.TYPE_FLOAT, B64FLT, 0, null);
+                else if (type == long.class)
+                    writeElements(g, numbers, Vtype2Binary.TYPE_LONG, B64LNG, 0, null);
+                else if (type == int.class)
+                    writeElements(g, numbers, Vtype2Binary.TYPE_INT, B64INT, 0, null);
+                else if (type == short.class)
+                    writeElements(g, numbers, Vtype2Binary.TYPE_SHORT, B64SRT, 0, null);
+                else if (type == byte.class)
+                    writeElements(g, numbers, Vtype2Binary.TYPE_BYTE, B64BYT, 0, null);
+                else
+                    writeElements(g, numbers, Vtype2Binary.TYPE_DOUBLE, B64DBL, 0, null);
+            }
+            else if (data instanceof ListBoolean bits)
+                writeBits(g, bits);
+            else if (data instanceof List<?> list)
+            {
+                g.writeFieldName(VALUE);
+                writeStrings(g, list);
+            }
+            g.writeEndObject();
+        }
+        g.writeEndArray();
+    }
+
+    private static void handleImage(final JsonGenerator g, final VImage value, final VType last_value, final int binary_id, final int[] ranges) throws Exception
     {
         final AlarmSeverity severity = value.getAlarm().getSeverity();
         if (last_value == null)
         {
             // Initially, add complete metadata
-            g.writeStringField("vtype", VType.typeOf(value).getSimpleName());
-            g.writeArrayFieldStart("labels");
-            for (final String label : value.getDisplay().getChoices())
-                g.writeString(label);
-            g.writeEndArray();
-
+            writeVType(g, value);
             // Initial severity
-            g.writeStringField("severity", value.getAlarm().getSeverity().name());
+            writeSeverity(g, severity);
         }
         else
         {
             // Add severity if it changed
-            if ((last_value instanceof VEnum v)  &&
+            if ((last_value instanceof VImage v)  &&
                 v.getAlarm().getSeverity() != severity)
-                g.writeStringField("severity", severity.name());
+                writeSeverity(g, severity);
         }
 
-        g.writeNumberField("value",  value.getIndex());
-        g.writeStringField("text",  value.getValue());
+        // Size and type may change with each image, e.g. when detector binning changes
+        g.writeFieldName(WIDTH);
+        g.writeNumber(value.getWidth());
+        g.writeFieldName(HEIGHT);
+        g.writeNumber(value.getHeight());
+        g.writeFieldName(DATATYPE);
+        g.writeString(value.getDataType().name());
+        g.writeFieldName(COLOR);
+        g.writeString(value.getVImageType().name());
+
+        final byte type = Vtype2Binary.getType(value.getDataType());
+        final SerializedString field = switch (type)
+        {
+            case Vtype2Binary.TYPE_DOUBLE -> B64DBL;
+            case Vtype2Binary.TYPE_FLOAT  -> B64FLT;
+            case Vtype2Binary.TYPE_LONG   -> B64LNG;
+            case Vtype2Binary.TYPE_INT    -> B64INT;
+            case Vtype2Binary.TYPE_SHORT  -> B64SRT;
+            default                       -> B64BYT;
+        };
+        writeElements(g, value.getData(), type, field, binary_id, ranges);
+    }
+
+    /** @param g {@link JsonGenerator}
+     *  @param items Items to write as array of strings
+     *  @throws Exception on error
+     */
+    private static void writeStrings(final JsonGenerator g, final List<?> items) throws Exception
+    {
+        g.writeStartArray();
+        for (final Object item : items)
+            g.writeString(item == null ? null : item.toString());
+        g.writeEndArray();
+    }
+
+    /** Write bit-packed booleans as "size" and "b64bit",
+     *  eight elements per byte with the first element in the lowest bit
+     *
+     *  @param g {@link JsonGenerator}
+     *  @param data Booleans
+     *  @throws Exception on error
+     */
+    private static void writeBits(final JsonGenerator g, final ListBoolean data) throws Exception
+    {
+        final int N = data.size();
+        final byte[] bits = new byte[(N + 7) / 8];
+        for (int i=0; i<N; ++i)
+            if (data.getBoolean(i))
+                bits[i >> 3] |= 1 << (i & 7);
+        g.writeFieldName(SIZE);
+        g.writeNumber(N);
+        g.writeFieldName(B64BIT);
+        g.writeBinary(bits);
     }
 }
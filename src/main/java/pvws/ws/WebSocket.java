@@ -1,45 +1,42 @@
 /*******************************************************************************
- * Copyright (c) 2019-2022 UT-Battelle, LLC.
+ * Copyright (c) 2019-2026 UT-Battelle, LLC.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the LICENSE
  * which accompanies this distribution
  ******************************************************************************/
 package pvws.ws;
 
-import static pvws.PVWebSocketContext.json_factory;
 import static pvws.PVWebSocketContext.logger;
 
-import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Objects;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 import javax.websocket.CloseReason;
+import javax.websocket.CloseReason.CloseCodes;
 import javax.websocket.EndpointConfig;
 import javax.websocket.OnClose;
 import javax.websocket.OnError;
 import javax.websocket.OnMessage;
 import javax.websocket.OnOpen;
 import javax.websocket.PongMessage;
-import javax.websocket.RemoteEndpoint.Basic;
 import javax.websocket.Session;
 import javax.websocket.server.ServerEndpoint;
 
-import org.epics.vtype.VType;
-
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.JsonNodeType;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import pvws.PVWebSocketContext;
 
@@ -47,7 +44,7 @@ import pvws.PVWebSocketContext;
  *  @author Kay Kasemir
  */
 @SuppressWarnings("nls")
-@ServerEndpoint(value="/pv")
+@ServerEndpoint(value="/pv", subprotocols={ MessageFormat.CBOR_SUBPROTOCOL })
 public class WebSocket
 {
     /** Time when web socket was created */
@@ -59,6 +56,18 @@ public class WebSocket
     /** Track when the last message was sent to web client */
     private volatile long last_message_sent = 0;
 
+    /** Throttle for this client's PVs, adapted to send time and queue depth */
+    private final ClientThrottle throttle = new ClientThrottle();
+
+    /** Bytes of queued messages and the message being sent */
+    private final ByteBudget budget = new ByteBudget();
+
+    /** Are array updates shed because the socket exceeds its share of the byte budget? */
+    private final AtomicBoolean shedding = new AtomicBoolean();
+
+    /** Has the socket been closed for exceeding its byte budget? */
+    private final AtomicBoolean over_budget = new AtomicBoolean();
+
     /** Is the queue full? */
     private final AtomicBoolean stuffed = new AtomicBoolean();
 
@@ -66,13 +75,44 @@ public class WebSocket
      *
      *  <p>Multiple threads concurrently writing to the socket results in
      *  IllegalStateException "remote endpoint was in state [TEXT_FULL_WRITING]"
-     *  All writes are thus performed by just one thread off this queue.
+     *  All writes are thus performed by the {@link MessageSender} off this queue.
      */
-    private final ArrayBlockingQueue<String> write_queue = new ArrayBlockingQueue<String>(2048);
+    private final Outbox write_queue = new Outbox(2048);
+
+    /** Sender that writes messages until an {@link #EXIT_MESSAGE} is queued. */
+    private final MessageSender sender;
+    private static final Message EXIT_MESSAGE = Message.text("EXIT");
+
+    /** Thread for closing sockets outside of sending and PV updates */
+    private static final ExecutorService closer = Executors.newSingleThreadExecutor(runnable ->
+    {
+        final Thread thread = new Thread(runnable, "PVWS Close");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final SerializedString LIST = new SerializedString("list"),
+                                          ERROR = new SerializedString("error"),
+                                          PROGRESS = new SerializedString("progress"),
+                                          HISTORY = new SerializedString("history");
 
-    /** Thread that writes messages until an {@link #EXIT_MESSAGE} is queued. */
-    private final Thread write_thread;
-    private static final String EXIT_MESSAGE = "EXIT";
+    /** Format of messages sent to the client, negotiated when opening the socket */
+    private volatile MessageFormat format = MessageFormat.JSON;
+
+    /** Send array elements as binary frames instead of base64 within JSON? */
+    private volatile boolean binary = false;
+
+    /** Send only the changed array elements? */
+    private volatile boolean delta = false;
+
+    /** Combine queued messages into 'updates' batches? */
+    private volatile boolean batch = false;
+
+    /** Send 'progress' messages while subscribed PVs are started? */
+    private volatile boolean progress = false;
+
+    /** Number of PVs handed to the {@link PVStarter} that have not connected, failed or been disposed */
+    private final AtomicInteger starting = new AtomicInteger();
 
     private volatile Session session = null;
     private volatile String id = "None";
@@ -80,15 +120,44 @@ public class WebSocket
     /** Map of PV name to PV */
     private final ConcurrentHashMap<String, WebSocketPV> pvs = new ConcurrentHashMap<>();
 
+    /** Parser for messages from the client */
+    private final RequestParser request_parser = new RequestParser(new RequestParser.Handler()
+    {
+        @Override
+        public void handlePV(final ObjectNode request, final String name) throws Exception
+        {
+            WebSocket.this.handlePV(request, name);
+        }
+
+        @Override
+        public void handleRequest(final ObjectNode request, final List<String> names, final String text) throws Exception
+        {
+            WebSocket.this.handleRequest(request, names, text);
+        }
+    });
+
+    // Messages are received one at a time,
+    // so these are only accessed by the thread that handles the current message
+
+    /** Options for the PVs of the current 'subscribe' request */
+    private SubscribeOptions request_options = null;
+
+    /** Number of request fields that were used to determine the request_options */
+    private int request_option_fields = 0;
+
+    /** PVs created by the current 'subscribe' request */
+    private final List<WebSocketPV> request_pvs = new ArrayList<>();
+
+    /** PVs of the current 'subscribe' request that still need to be handed to the {@link PVStarter} */
+    private final List<WebSocketPV> request_start = new ArrayList<>();
+
     /** Constructor */
     public WebSocket()
     {
         // Constructor, register with PVWebSocketContext
         PVWebSocketContext.register(this);
 
-        write_thread = new Thread(this::writeQueuedMessages, "PVWS Write Thread");
-        write_thread.setDaemon(true);
-        write_thread.start();
+        sender = MessageSender.create(this);
     }
 
     /** @return Session ID */
@@ -118,18 +187,171 @@ public class WebSocket
         return last_message_sent;
     }
 
+    /** @return Current throttle (ms) for this client's PVs */
+    public int getThrottle()
+    {
+        return throttle.getThrottle();
+    }
+
+    /** @return Average time (ms) to send a message */
+    public double getSendLatency()
+    {
+        return throttle.getLatency();
+    }
+
+    /** @param period_ms Throttle period requested for a PV
+     *  @return Current throttle (ms) for the PV
+     */
+    int getThrottle(final int period_ms)
+    {
+        return throttle.getThrottle(period_ms);
+    }
+
     /** @return {@link WebSocketPV}s */
     public Collection<WebSocketPV> getPVs()
     {
         return Collections.unmodifiableCollection(pvs.values());
     }
 
-    /** @return Number of queued messages */
+    /** @return Format of messages sent to the client */
+    public MessageFormat getFormat()
+    {
+        return format;
+    }
+
+    /** @return Does client receive array elements as binary frames? */
+    public boolean isBinary()
+    {
+        // Binary message formats already carry the array elements as bytes
+        return binary  &&  format == MessageFormat.JSON;
+    }
+
+    /** @return Does client receive only the changed array elements? */
+    public boolean isDelta()
+    {
+        return delta;
+    }
+
+    /** @return Does client receive batches of messages? */
+    public boolean isBatch()
+    {
+        return batch;
+    }
+
+    /** @param message Queued message
+     *  @return Can message be included in a batch?
+     */
+    boolean canBatch(final Message message)
+    {
+        if (message == EXIT_MESSAGE)
+            return false;
+        // Binary messages are array element frames, except for binary formats
+        return format != MessageFormat.JSON  ||  message.isText();
+    }
+
+    /** @return Number of queued messages and PVs with pending update */
     public int getQueuedMessageCount()
     {
         return write_queue.size();
     }
 
+    /** @return Number of queued control messages, scalar PVs and array PVs */
+    public int[] getQueueDepths()
+    {
+        return write_queue.getDepths();
+    }
+
+    /** @return Number of PVs that are waiting to be started or connecting */
+    public int getStartingPVCount()
+    {
+        return starting.get();
+    }
+
+    /** @return Number of PVs of all sockets that are waiting to be started */
+    public static int getTotalStartingPVCount()
+    {
+        return PVStarter.getQueuedCount();
+    }
+
+    /** @return Number of PVs of all sockets that have been started but not connected */
+    public static int getTotalConnectingPVCount()
+    {
+        return PVStarter.getConnectingCount();
+    }
+
+    /** @return Number of PVs, across all sockets, with updates that wait for their throttle period */
+    public static int getTotalScheduledUpdateCount()
+    {
+        return UpdateScheduler.getScheduledCount();
+    }
+
+    /** @return Bytes of queued messages and the message being sent */
+    public long getQueuedBytes()
+    {
+        return budget.get();
+    }
+
+    /** @return Bytes of queued messages and messages being sent for all sockets */
+    public static long getTotalQueuedBytes()
+    {
+        return ByteBudget.getTotal();
+    }
+
+    /** @return Byte budget for all sockets */
+    public static long getQueueByteBudget()
+    {
+        return ByteBudget.TOTAL_BYTES;
+    }
+
+    /** Track bytes of messages
+     *
+     *  <p>Socket is closed when its queued messages, not counting the one being sent,
+     *  exceed twice its share of the budget while the sender is stalled,
+     *  i.e. the oldest queued entry has waited longer than PV_CLIENT_QUEUE_MS.
+     *  Until then, array updates are shed, see {@link #isOverBudget()}.
+     *
+     *  @param bytes Bytes added to (positive) or released from (negative) the queue
+     */
+    void addQueuedBytes(final long bytes)
+    {
+        budget.add(bytes);
+        if (bytes <= 0)
+            return;
+        final long queued = budget.getQueued();
+        if (queued <= 2 * budget.getShare()  ||  write_queue.getAge() <= ClientThrottle.QUEUE_MS)
+            return;
+        final Session safe_session = session;
+        if (safe_session == null  ||  over_budget.getAndSet(true))
+            return;
+        logger.log(Level.WARNING, () -> "Closing stalled web socket " + id + " with " + queued + " queued bytes, exceeding its share of PV_QUEUE_BYTES");
+        // Close on other thread, not within sender or PV update
+        closer.execute(() ->
+        {
+            try
+            {
+                safe_session.close(new CloseReason(CloseCodes.TRY_AGAIN_LATER, "Queued data exceeds memory budget"));
+            }
+            catch (final Exception ex)
+            {
+                logger.log(Level.WARNING, "Cannot close web socket " + id, ex);
+            }
+        });
+    }
+
+    /** @return Does socket exceed its share of the byte budget, so array updates should be shed? */
+    boolean isOverBudget()
+    {
+        final boolean over = budget.isOverShare();
+        if (shedding.getAndSet(over) != over)
+        {
+            if (over)
+                logger.log(Level.WARNING, () -> "Shedding array updates for " + id + " with " + budget.get() + " queued bytes");
+            else
+                logger.log(Level.INFO, () -> "Resuming array updates for " + id);
+        }
+        return over;
+    }
+
     /** @param message Potentially long message
      *  @return Message shorted to 200 chars
      */
@@ -140,79 +362,115 @@ public class WebSocket
         return message.substring(0, 200) + " ...";
     }
 
-    private void queueMessage(final String message)
+    /** @param message Message to queue
+     *  @return <code>true</code> if queued, <code>false</code> if dropped
+     */
+    private boolean queueMessage(final Message message)
     {
         // Ignore messages after 'dispose'
         if (session == null)
-            return;
+            return false;
 
         if (write_queue.offer(message))
-        {   // Queued OK. Is this a recovery from stuffed queue?
+        {   // Queued OK
+            addQueuedBytes(message.size());
+            sender.messageQueued();
+            // Is this a recovery from stuffed queue?
             if (stuffed.getAndSet(false))
                 logger.log(Level.WARNING, () -> "Un-stuffed message queue for " + id);
+            return true;
         }
         else
         {   // Log, but only for the first message to prevent flooding the log
             if (stuffed.getAndSet(true) == false)
-                logger.log(Level.WARNING, () -> "Cannot queue message '" + shorten(message) + "' for " + id);
+                logger.log(Level.WARNING, () -> "Cannot queue message '" + shorten(message.toString()) + "' for " + id);
+            return false;
         }
     }
 
-    private void writeQueuedMessages()
+    /** @return Next queued message, waiting for one if necessary
+     *  @throws InterruptedException when interrupted
+     */
+    Message takeMessage() throws InterruptedException
     {
-        try
-        {
-            while (true)
-            {
-                final String message;
-                try
-                {
-                    message = write_queue.take();
-                }
-                catch (final InterruptedException ex)
-                {
-                    return;
-                }
+        return write_queue.take();
+    }
 
-                // Check if we should exit the thread
-                if (message == EXIT_MESSAGE)
-                {
-                    logger.log(Level.FINE, () -> "Exiting write thread " + id);
-                    return;
-                }
+    /** @return Next queued message or <code>null</code> */
+    Message pollMessage()
+    {
+        return write_queue.poll();
+    }
 
-                final Session safe_session = session;
-                try
-                {
-                    if (safe_session == null)
-                        throw new Exception("No session");
-                    if (! safe_session.isOpen())
-                        throw new Exception("Session closed");
-                    safe_session.getBasicRemote().sendText(message);
-                    last_message_sent = System.currentTimeMillis();
-                }
-                catch (final Exception ex)
-                {
-                    logger.log(Level.WARNING, ex, () -> "Cannot write '" + shorten(message) + "' for " + id);
-
-                    // Clear queue
-                    String drop = write_queue.take();
-                    while (drop != null)
-                    {
-                        if (drop == EXIT_MESSAGE)
-                        {
-                            logger.log(Level.FINE, () -> "Exiting write thread " + id);
-                            return;
-                        }
-                        drop = write_queue.take();
-                    }
-                }
-            }
-        }
-        catch (Throwable ex)
-        {
-            logger.log(Level.WARNING, "Write thread error for " + id, ex);
-        }
+    /** @return Are messages queued? */
+    boolean hasQueuedMessages()
+    {
+        return ! write_queue.isEmpty();
+    }
+
+    /** @param pv PV that has a pending update
+     *  @param array Is the update an array, to be sent in the lower priority lane?
+     */
+    void updatePending(final WebSocketPV pv, final boolean array)
+    {
+        // Ignore updates after 'dispose'
+        if (session == null)
+            return;
+        write_queue.offerUpdate(pv, array);
+        sender.messageQueued();
+    }
+
+    /** @param message Message taken from queue
+     *  @return Is this the message that tells the sender to exit?
+     */
+    boolean isExit(final Message message)
+    {
+        return message == EXIT_MESSAGE;
+    }
+
+    /** @return Session or <code>null</code> */
+    Session getSession()
+    {
+        return session;
+    }
+
+    /** Called by sender before it sends a message
+     *  @param message Message
+     */
+    void messageSending(final Message message)
+    {
+        budget.setSending(message.size());
+    }
+
+    /** Called by sender when a message has been sent
+     *  @param message Message
+     *  @param nanos Time it took to send the message
+     */
+    void messageSent(final Message message, final long nanos)
+    {
+        last_message_sent = System.currentTimeMillis();
+        budget.setSending(0);
+        addQueuedBytes(-message.size());
+        throttle.messageSent(nanos, write_queue.getAge(), id);
+    }
+
+    /** Called by sender when a message is dropped
+     *  @param message Message
+     */
+    void messageDropped(final Message message)
+    {
+        addQueuedBytes(-message.size());
+    }
+
+    /** Called by sender when a message could not be sent
+     *  @param message Message
+     *  @param ex Error
+     */
+    void sendFailed(final Message message, final Exception ex)
+    {
+        budget.setSending(0);
+        messageDropped(message);
+        logger.log(Level.WARNING, ex, () -> "Cannot write '" + shorten(message.toString()) + "' for " + id);
     }
 
     private void trackClientUpdate()
@@ -230,7 +488,10 @@ public class WebSocket
         logger.log(Level.FINE, () -> "Opening web socket " + session.getRequestURI() + " ID " + session.getId());
         this.session = session;
         id = session.getId();
-        write_thread.setName("PVWS Write Thread " + id);
+        format = MessageFormat.forSubprotocol(session.getNegotiatedSubprotocol());
+        if (format != MessageFormat.JSON)
+            logger.log(Level.FINE, () -> "Web socket " + id + " uses " + format);
+        sender.setName(id);
         trackClientUpdate();
     }
 
@@ -257,130 +518,355 @@ public class WebSocket
         trackClientUpdate();
     }
 
-    private List<String> getPVs(final String message, final JsonNode json) throws Exception
+    /** Called when client sends a general message, or part of it
+     *
+     *  <p>Large messages arrive in parts,
+     *  which are parsed as they arrive.
+     *
+     *  @param part Text of the message or part of it, expected to be JSON
+     *  @param last Is this the last part of the message?
+     *  @param session {@link Session}
+     */
+    @OnMessage
+    public void onMessage(final String part, final boolean last, final Session session)
     {
-        final JsonNode node = json.path("pvs");
+        trackClientUpdate();
+        logger.log(Level.FINER, () -> "Received: " + shorten(part) + (last ? "" : " ...") + " on " + Thread.currentThread());
+
+        try
+        {
+            request_parser.parse(part, last);
+        }
+        catch (final Exception ex)
+        {
+            logger.log(Level.WARNING, ex, () -> "Error for message " + shorten(request_parser.getText()));
+        }
+        finally
+        {
+            if (last)
+            {
+                startPVs();
+                request_options = null;
+                request_pvs.clear();
+            }
+        }
+    }
+
+    /** @param request Subscribe request
+     *  @return Options for the PVs of the request
+     *  @throws Exception on error
+     */
+    private SubscribeOptions getRequestOptions(final ObjectNode request) throws Exception
+    {
+        // Fields are only added while the request is parsed,
+        // so options change only when the number of fields changes
+        if (request_options == null  ||  request_option_fields != request.size())
+        {
+            // Client may opt into binary frames for array elements
+            if (request.has("binary"))
+                binary = request.path("binary").asBoolean();
+            // .. and into receiving only changed array elements
+            if (request.has("delta"))
+                delta = request.path("delta").asBoolean();
+            // .. and into batching messages
+            if (request.has("batch"))
+                batch = request.path("batch").asBoolean();
+            // .. and into progress reports
+            if (request.has("progress"))
+                progress = request.path("progress").asBoolean();
+            // Options like "max_points" apply to the PVs of this request
+            request_options = SubscribeOptions.fromJson(request);
+            request_option_fields = request.size();
+        }
+        return request_options;
+    }
+
+    /** @param request Request
+     *  @return Request type
+     *  @throws Exception on error
+     */
+    private String getType(final ObjectNode request) throws Exception
+    {
+        final JsonNode node = request.path("type");
         if (node.isMissingNode())
-            throw new Exception("Missing 'pvs' in " + shorten(message));
-        final Iterator<JsonNode> nodes = node.elements();
-        final List<String> pvs = new ArrayList<String>();
-        while (nodes.hasNext())
-            pvs.add(nodes.next().asText());
-        return pvs;
+            throw new Exception("Missing 'type'");
+        return node.asText();
     }
 
-    /** Called when client sends a general message
-     *  @param message Text of the message, expected to be JSON
-     *  @param session {@link Session}
+    /** Subscribe or clear one PV while the request is being parsed */
+    private void handlePV(final ObjectNode request, final String name) throws Exception
+    {
+        switch (getType(request))
+        {
+        // Support 'monitor' for compatibility with epics2web
+        case "monitor":
+        case "subscribe":
+            subscribe(name, getRequestOptions(request));
+            break;
+        case "clear":
+            clear(name);
+            break;
+        default:
+            throw new Exception("'pvs' not supported for '" + getType(request) + "'");
+        }
+    }
+
+    /** @param name PV to subscribe
+     *  @param options Options for the PV
      */
-    @OnMessage
-    public void onMessage(final String message, final Session session)
+    private void subscribe(final String name, final SubscribeOptions options)
     {
-        trackClientUpdate();
-        logger.log(Level.FINER, () -> "Received: " + shorten(message) + " on " + Thread.currentThread());
+        // Only create the PV within computeIfAbsent,
+        // start it outside of the map
+        final WebSocketPV[] created = new WebSocketPV[1];
+        pvs.computeIfAbsent(name, n ->
+        {
+            logger.log(Level.FINER, () -> "Subscribe to " + name);
+            created[0] = new WebSocketPV(name, this, options);
+            return created[0];
+        });
+        final WebSocketPV pv = created[0];
+        if (pv == null)
+            return;
+        request_pvs.add(pv);
 
+        // PV that is already shared with a value starts right away,
+        // without 'progress' since there is no wait
+        if (! pv.startCached())
+        {
+            request_start.add(pv);
+            if (request_start.size() >= PVStarter.BATCH)
+                startPVs();
+        }
+    }
+
+    /** Apply options that followed the 'pvs' to the PVs already subscribed by the request
+     *
+     *  <p>PVs that are still waiting to be handed to the {@link PVStarter}
+     *  simply use the new options.
+     *  PVs that might already be bound to a {@link SharedPV} for a different
+     *  throttle or aggregation are subscribed again.
+     *
+     *  @param earlier Options used for the PVs so far
+     *  @param options Options of the complete request
+     */
+    private void applyLateOptions(final SubscribeOptions earlier, final SubscribeOptions options)
+    {
+        final List<String> resubscribe = new ArrayList<>();
+        for (final WebSocketPV pv : request_pvs)
+        {
+            if (earlier.isSameSharedPV(options)  ||  request_start.contains(pv))
+                pv.setOptions(options);
+            else
+                resubscribe.add(pv.getName());
+        }
+        for (final String name : resubscribe)
+        {
+            clear(name);
+            subscribe(name, options);
+        }
+    }
+
+    /** Hand PVs of current request to the {@link PVStarter} */
+    private void startPVs()
+    {
+        if (request_start.isEmpty())
+            return;
+        starting.addAndGet(request_start.size());
+        for (final WebSocketPV pv : request_start)
+            pv.setStarting();
+        PVStarter.start(request_start);
+        request_start.clear();
+    }
+
+    /** Called by {@link WebSocketPV} that was handed to the {@link PVStarter}
+     *  when it receives its first value, fails to start, or is disposed
+     */
+    void pvConnected()
+    {
+        final int left = starting.decrementAndGet();
+        if (progress  &&  left % PVStarter.BATCH == 0)
+            sendProgress(left);
+    }
+
+    /** @param left Number of PVs that are waiting to be started or connecting */
+    private void sendProgress(final int left)
+    {
+        int connected = 0, failed = 0;
+        for (final WebSocketPV pv : pvs.values())
+            if (pv.getLastValue() != null)
+                ++connected;
+            else if (pv.isFailed())
+                ++failed;
+
+        final JsonEncoder encoder = JsonEncoder.get(format);
+        try
+        {
+            final JsonGenerator g = encoder.start();
+            g.writeStartObject();
+            g.writeFieldName(Vtype2Json.TYPE);
+            g.writeString(PROGRESS);
+            g.writeNumberField("pvs", pvs.size());
+            g.writeNumberField("starting", left);
+            g.writeNumberField("connected", connected);
+            g.writeNumberField("failed", failed);
+            g.writeEndObject();
+            queueMessage(encoder.finishMessage());
+        }
+        catch (final Exception ex)
+        {
+            encoder.discard();
+            logger.log(Level.WARNING, "Cannot send progress for " + id, ex);
+        }
+    }
+
+    /** Send history of a PV, empty if the PV has no history
+     *  @param pv PV
+     *  @param seconds Send samples of the last seconds
+     *  @throws Exception on error
+     */
+    private void sendHistory(final WebSocketPV pv, final double seconds) throws Exception
+    {
+        final History history = PVHub.getHistory(pv.getName());
+        final JsonEncoder encoder = JsonEncoder.get(format);
         try
         {
-            final Basic remote = session.getBasicRemote();
-
-            final ObjectMapper mapper = new ObjectMapper(json_factory);
-            final JsonNode json = mapper.readTree(message);
-            final JsonNode node = json.path("type");
-            if (node.isMissingNode())
-                throw new Exception("Missing 'type' in " + shorten(message));
-            final String type = node.asText();
-            switch (type)
+            final JsonGenerator g = encoder.start();
+            g.writeStartObject();
+            g.writeFieldName(Vtype2Json.TYPE);
+            g.writeString(HISTORY);
+            g.writeFieldName(Vtype2Json.PV);
+            g.writeString(pv.getName());
+            if (history != null)
+                history.write(g, seconds);
+            g.writeEndObject();
+            queueMessage(encoder.finishMessage());
+        }
+        catch (final Exception ex)
+        {
+            encoder.discard();
+            throw ex;
+        }
+    }
+
+    /** @param name PV to clear */
+    private void clear(final String name)
+    {
+        final WebSocketPV pv = pvs.remove(name);
+        if (pv != null)
+        {
+            logger.log(Level.FINER, () -> "Clear " + name);
+            pv.dispose();
+        }
+    }
+
+    /** Handle complete request */
+    private void handleRequest(final ObjectNode request, final List<String> names, final String text) throws Exception
+    {
+        final String type = getType(request);
+        switch (type)
+        {
+        // Support 'monitor' for compatibility with epics2web
+        case "monitor":
+        case "subscribe":
             {
-            // Support 'monitor' for compatibility with epics2web
-            case "monitor":
-            case "subscribe":
-                for (final String name : getPVs(message, json))
-                {
-                    pvs.computeIfAbsent(name, n ->
-                    {
-                        logger.log(Level.FINER, () -> "Subscribe to " + name);
-                        final WebSocketPV pv = new WebSocketPV(name, this);
-                        try
-                        {
-                            pv.start();
-                        }
-                        catch (final Exception ex)
-                        {
-                            logger.log(Level.WARNING, "Cannot start PV " + name, ex);
-                        }
-                        return pv;
-                    });
-                }
-                break;
-            case "clear":
-                for (final String name : getPVs(message, json))
-                {
-                    final WebSocketPV pv = pvs.remove(name);
-                    if (pv != null)
-                    {
-                        logger.log(Level.FINER, () -> "Clear " + name);
-                        pv.dispose();
-                    }
-                }
-                break;
-            case "list":
+                if (names == null)
+                    throw new Exception("Missing 'pvs'");
+                // Options that followed the 'pvs' apply to all PVs of this request
+                final SubscribeOptions earlier = request_options;
+                final SubscribeOptions options = getRequestOptions(request);
+                if (earlier != null  &&  earlier != options)
+                    applyLateOptions(earlier, options);
+                for (final String name : names)
+                    subscribe(name, options);
+            }
+            break;
+        case "clear":
+            if (names == null)
+                throw new Exception("Missing 'pvs'");
+            for (final String name : names)
+                clear(name);
+            break;
+        case "list":
+            {
+                final JsonEncoder encoder = JsonEncoder.get(format);
+                try
                 {
-                    final ByteArrayOutputStream buf = new ByteArrayOutputStream();
-                    final JsonGenerator g = json_factory.createGenerator(buf);
+                    final JsonGenerator g = encoder.start();
                     g.writeStartObject();
-                    g.writeStringField("type", "list");
+                    g.writeFieldName(Vtype2Json.TYPE);
+                    g.writeString(LIST);
                     g.writeArrayFieldStart("pvs");
                     for (final WebSocketPV pv : pvs.values())
                         g.writeString(pv.getName());
                     g.writeEndArray();
                     g.writeEndObject();
-                    g.flush();
-                    queueMessage(buf.toString());
+                    queueMessage(encoder.finishMessage());
                 }
-                break;
-            case "write":
+                catch (final Exception ex)
                 {
-                    JsonNode n = json.path("pv");
-                    if (n.isMissingNode())
-                        throw new Exception("Missing 'pv' in " + shorten(message));
-                    final String pv_name = n.asText();
-
-                    n = json.path("value");
-                    if (n.isMissingNode())
-                        throw new Exception("Missing 'value' in " + shorten(message));
-                    final Object value;
-                    if (n.getNodeType() == JsonNodeType.NUMBER)
-                        value = n.asDouble();
-                    else
-                        value = n.asText();
-
-                    try
-                    {
-                        final WebSocketPV pv = pvs.get(pv_name);
-                        if (pv == null)
-                            throw new Exception("Cannot write unknown PV " + pv_name);
-                        pv.write(value);
-                    }
-                    catch (final Exception ex)
-                    {
-                        sendError(ex.getMessage());
-                    }
+                    encoder.discard();
+                    throw ex;
                 }
-                break;
-            case "ping":
+            }
+            break;
+        case "write":
+            {
+                JsonNode n = request.path("pv");
+                if (n.isMissingNode())
+                    throw new Exception("Missing 'pv'");
+                final String pv_name = n.asText();
+
+                n = request.path("value");
+                if (n.isMissingNode())
+                    throw new Exception("Missing 'value'");
+                final Object value;
+                if (n.getNodeType() == JsonNodeType.NUMBER)
+                    value = n.asDouble();
+                else
+                    value = n.asText();
+
+                try
+                {
+                    final WebSocketPV pv = pvs.get(pv_name);
+                    if (pv == null)
+                        throw new Exception("Cannot write unknown PV " + pv_name);
+                    pv.write(value);
+                }
+                catch (final Exception ex)
+                {
+                    sendError(ex.getMessage());
+                }
+            }
+            break;
+        case "history":
+            {
+                final JsonNode n = request.path("pv");
+                if (n.isMissingNode())
+                    throw new Exception("Missing 'pv'");
+                final String pv_name = n.asText();
+                final WebSocketPV pv = pvs.get(pv_name);
+                if (pv == null)
+                    sendError("Cannot get history of unknown PV " + pv_name);
+                else
+                    sendHistory(pv, request.path("seconds").asDouble(Double.MAX_VALUE));
+            }
+            break;
+        case "ping":
+            {
                 logger.log(Level.FINER, "Sending ping...");
-                remote.sendPing(ByteBuffer.allocate(0));
-                break;
-            case "echo":
-                queueMessage(message);
-                break;
-            default:
-                throw new Exception("Unknown message type: " + shorten(message));
+                final Session safe_session = session;
+                if (safe_session != null)
+                    safe_session.getBasicRemote().sendPing(ByteBuffer.allocate(0));
             }
-        }
-        catch (final Exception ex)
-        {
-            logger.log(Level.WARNING, ex, () -> "Error for message " + shorten(message));
+            break;
+        case "echo":
+            if (text == null)
+                throw new Exception("Message too long to echo");
+            queueMessage(Message.text(text));
+            break;
+        default:
+            throw new Exception("Unknown message type: " + type);
         }
     }
 
@@ -397,40 +883,23 @@ public class WebSocket
             logger.log(Level.WARNING, "Web Socket error", ex);
     }
 
-    /** @param name PV name for which to send an update
-     *  @param value Current value
-     *  @param last_value Previous value
-     *  @param last_readonly Was the PV read-only?
-     *  @param readonly Is the PV read-only?
-     */
-    public void sendUpdate(final String name, final VType value, final VType last_value, final Boolean last_readonly, final Boolean readonly)
-    {
-        try
-        {
-            queueMessage(Vtype2Json.toJson(name, value, last_value, last_readonly, readonly));
-        }
-        catch (final Exception ex)
-        {
-            logger.log(Level.WARNING, "Cannot send " + name + " = " + shorten(Objects.toString(value)), ex);
-        }
-    }
-
     /** @param message Error message */
     public void sendError(final String message)
     {
+        final JsonEncoder encoder = JsonEncoder.get(format);
         try
         {
-            final ByteArrayOutputStream buf = new ByteArrayOutputStream();
-            final JsonGenerator g = json_factory.createGenerator(buf);
+            final JsonGenerator g = encoder.start();
             g.writeStartObject();
-            g.writeStringField("type", "error");
+            g.writeFieldName(Vtype2Json.TYPE);
+            g.writeString(ERROR);
             g.writeStringField("message", message);
             g.writeEndObject();
-            g.flush();
-            queueMessage(buf.toString());
+            queueMessage(encoder.finishMessage());
         }
         catch (final Exception ex)
         {
+            encoder.discard();
             logger.log(Level.WARNING, "Cannot send error " + shorten(message), ex);
         }
     }
@@ -443,7 +912,7 @@ public class WebSocket
      */
     public void dispose()
     {
-        // Exit write thread
+        // Exit sender
         try
         {
             // Drop queued messages (which might be stuffed):
@@ -462,6 +931,7 @@ public class WebSocket
             }
             PVWebSocketContext.unregister(this);
             session = null;
+            budget.close();
         }
         catch (Throwable ex)
         {
@@ -6,75 +6,104 @@
  ******************************************************************************/
 package pvws.ws;
 
-import static pvws.PVWebSocketContext.logger;
-
-import java.util.concurrent.TimeUnit;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.logging.Level;
 
 import org.epics.vtype.Array;
 import org.epics.vtype.VType;
 import org.phoebus.pv.PV;
-import org.phoebus.pv.PVPool;
-
-import io.reactivex.rxjava3.disposables.Disposable;
 
 /** Web socket PV
  *
- *  <p>Connects to {@link PV}, updates {@link WebSocket}
+ *  <p>Subscribes to the {@link SharedPV} for a {@link PV}, updates {@link WebSocket}
  *
  *  @author Kay Kasemir
  */
 @SuppressWarnings("nls")
 public class WebSocketPV
 {
-    /** Value throttle */
-    private static final int THROTTLE_MS;
+    private final String name;
+    private final WebSocket socket;
+    private volatile SubscribeOptions options;
+    private volatile SharedPV shared;
 
-    /** Array value throttle */
-    private static final int ARRAY_THROTTLE_MS;
+    /** Latest update that has not been sent, or <code>null</code> */
+    private final AtomicReference<SharedPV.Update> pending = new AtomicReference<>();
 
-    /** Support writing? */
-    private static final boolean PV_WRITE_SUPPORT;
+    /** Is this PV queued in the {@link Outbox}? SYNC on the outbox lock */
+    boolean in_outbox = false;
 
-    private final String name;
-    private final WebSocket socket;
-    private volatile PV pv;
-    private AtomicReference<Disposable> subscription = new AtomicReference<>(), array_subscription = new AtomicReference<>(),
-                                        subscription_access = new AtomicReference<>();
-    private volatile boolean subscribed_for_array = false;
-    private volatile VType last_value = null;
-    private volatile Boolean last_readonly = null;
-
-    static
-    {
-        String spec = System.getenv("PV_THROTTLE_MS");
-        if (spec == null)
-            THROTTLE_MS = 1000;
-        else
-            THROTTLE_MS = Integer.parseInt(spec);
+    /** Time (System.nanoTime) when this PV was queued in the {@link Outbox}. SYNC on the outbox lock */
+    long outbox_nanos = 0;
 
-        spec = System.getenv("PV_ARRAY_THROTTLE_MS");
-        if (spec == null)
-            ARRAY_THROTTLE_MS = 10000;
-        else
-            ARRAY_THROTTLE_MS = Integer.parseInt(spec);
+    /** Sequence number of the last update sent to the socket.
+     *
+     *  <p>Set by the socket's {@link MessageSender},
+     *  advanced by the {@link SharedPV} over updates suppressed by the deadband
+     *  so that the next update can still be sent as changes.
+     */
+    private final AtomicLong sent_sequence = new AtomicLong(-1);
 
-        spec = System.getenv("PV_WRITE_SUPPORT");
-        PV_WRITE_SUPPORT = "true".equalsIgnoreCase(spec);
+    /** Time (ms since epoch) when the last update was sent */
+    private volatile long last_sent = 0;
 
-        logger.log(Level.INFO, "PV_THROTTLE_MS = " + THROTTLE_MS);
-        logger.log(Level.INFO, "PV_ARRAY_THROTTLE_MS = " + ARRAY_THROTTLE_MS);
-        logger.log(Level.INFO, "PV_WRITE_SUPPORT = " + PV_WRITE_SUPPORT);
-    }
+    /** Has the PV been disposed? Set while holding the lock on this */
+    private volatile boolean disposed = false;
+
+    /** Has the PV been started, but not received a value? */
+    private volatile boolean connecting = false;
+
+    /** Was the PV handed to the {@link PVStarter} and has not connected, failed or been disposed? */
+    private final AtomicBoolean starting = new AtomicBoolean();
+
+    /** Did the PV fail to start? */
+    private volatile boolean failed = false;
+
+    /** Deadband for numeric scalars */
+    private volatile Deadband deadband;
+
+    /** Last update that passed the deadband.
+     *
+     *  <p>Only accessed by the {@link SharedPV}, which serializes updates.
+     */
+    private SharedPV.Update passed = null;
+
+    /** Is an update deferred by the socket's throttle? */
+    private final AtomicBoolean deferred = new AtomicBoolean();
+
+    /** Time (ms since epoch) until which the update is deferred */
+    private volatile long deferred_until = 0;
+
+    /** Task that handles the deferred update */
+    private final UpdateScheduler.Task deferred_task = this::handleDeferred;
 
     /** @param name PV name
      *  @param socket Socket to notify about value updates
      */
     public WebSocketPV(final String name, final WebSocket socket)
+    {
+        this(name, socket, SubscribeOptions.DEFAULT);
+    }
+
+    /** @param name PV name
+     *  @param socket Socket to notify about value updates
+     *  @param options Subscription options
+     */
+    WebSocketPV(final String name, final WebSocket socket, final SubscribeOptions options)
     {
         this.name = name;
         this.socket = socket;
+        this.options = options;
+        deadband = options.getDeadband(name);
+    }
+
+    /** @param options Subscription options */
+    void setOptions(final SubscribeOptions options)
+    {
+        this.options = options;
+        deadband = options.getDeadband(name);
     }
 
     /** @return PV name */
@@ -83,76 +112,224 @@ public class WebSocketPV
         return name;
     }
 
+    /** Called before the PV is handed to the {@link PVStarter}
+     *
+     *  <p>The socket then counts the PV as starting
+     *  until it connects, fails to start or is disposed.
+     */
+    void setStarting()
+    {
+        starting.set(true);
+    }
+
+    /** @return Did the PV fail to start? */
+    boolean isFailed()
+    {
+        return failed;
+    }
+
     /** Start PV
+     *
+     *  <p>Called by the {@link PVStarter}.
+     *  Does nothing when the PV has already been disposed.
+     *
      *  @throws Exception on error
      *  @see #dispose()
      */
-    public void start() throws Exception
+    void start() throws Exception
     {
-        subscribed_for_array = false;
-        pv = PVPool.getPV(name);
-        // Subscribe at the 'normal' throttling rate.
-        subscription.set(pv.onValueEvent()
-                           .throttleLatest(THROTTLE_MS, TimeUnit.MILLISECONDS)
-                           .subscribe(this::handleUpdates));
-        subscription_access.set(pv.onAccessRightsEvent()
-                                   .throttleLatest(THROTTLE_MS, TimeUnit.MILLISECONDS)
-                                   .subscribe(this::handleAccessChanges));
+        try
+        {
+            synchronized (this)
+            {
+                if (disposed)
+                {
+                    PVStarter.connected(this);
+                    return;
+                }
+                connecting = true;
+            }
+            // Subscribe without holding the lock, because that may wait
+            // for the PV to be created and dispose() must not block on that.
+            // PV may be disposed meanwhile, then un-subscribe again
+            final SharedPV subscribed = PVHub.subscribe(name, options.throttle_ms, options.array_throttle_ms, options.aggregate, this);
+            if (! setShared(subscribed))
+                PVHub.unsubscribe(subscribed, this);
+        }
+        catch (final Exception ex)
+        {
+            failed = true;
+            connected();
+            throw ex;
+        }
+    }
+
+    /** Start PV if it is already shared with a value
+     *
+     *  <p>Subscribing then just adds this PV and sends the cached value,
+     *  so it is done right away instead of via the {@link PVStarter}.
+     *
+     *  @return <code>true</code> if started, <code>false</code> if PV needs to be started by the {@link PVStarter}
+     */
+    boolean startCached()
+    {
+        if (disposed)
+            return true;
+        final SharedPV subscribed = PVHub.subscribeCached(name, options.throttle_ms, options.array_throttle_ms, options.aggregate, this);
+        if (subscribed == null)
+            return false;
+        if (! setShared(subscribed))
+            PVHub.unsubscribe(subscribed, this);
+        return true;
+    }
+
+    /** @param subscribed {@link SharedPV} to which this PV subscribed
+     *  @return <code>false</code> if PV was disposed while subscribing and needs to un-subscribe
+     */
+    private synchronized boolean setShared(final SharedPV subscribed)
+    {
+        if (disposed)
+            return false;
+        shared = subscribed;
+        return true;
+    }
+
+    /** Called when PV receives first value, or will never receive one */
+    private void connected()
+    {
+        if (connecting)
+        {
+            connecting = false;
+            PVStarter.connected(this);
+        }
+        if (starting.get()  &&  starting.getAndSet(false))
+            socket.pvConnected();
     }
 
-    /** Handle change in value
-     *  @param value Latest value
+    /** Handle update from shared PV
+     *
+     *  <p>Replaces a previous update that has not been sent,
+     *  so a slow client receives the latest value,
+     *  merging the statistics of aggregated updates.
+     *  When the socket's throttle is slower than that of the {@link SharedPV},
+     *  the update is deferred until the throttle period has passed.
+     *  Values within the deadband of the last value that passed are suppressed.
+     *  While the socket exceeds its share of the byte budget,
+     *  array updates are deferred, so intermediate updates are shed.
+     *
+     *  @param update Latest update
      */
-    private void handleUpdates(final VType value)
+    void handleUpdate(final SharedPV.Update update)
     {
-        if (value instanceof Array array && !subscribed_for_array)
+        connected();
+        // Suppress values within deadband of the last one that passed.
+        // If the client has the previous update, it has seen this one
+        if (deadband.suppress(passed, update))
         {
-            // If the data turns out to be array values,
-            // re-subscribe at a (slower) 'array' rate.
-            // Problem is that subscribe() above may end up calling this update handler
-            // before 'subscription' is assigned,
-            // so we won't be able to cancel that subscription right away.
-            // Instead, we'll create a separate 'array_subscription',
-            // and in a later update we then dispose the initial subscription.
-            logger.log(Level.FINE, () -> "Re-subscribing to array " + name + ", " + array.getSizes());
-
-            subscribed_for_array = true;
-            array_subscription.set(pv.onValueEvent()
-                                     .throttleLatest(ARRAY_THROTTLE_MS, TimeUnit.MILLISECONDS)
-                                     .subscribe(this::handleUpdates));
+            sent_sequence.compareAndSet(update.sequence - 1, update.sequence);
             return;
         }
+        passed = update;
+        // Statistics of a replaced update that was not sent carry over to the new one
+        if (update.aggregate == null)
+            pending.set(update);
+        else
+            pending.accumulateAndGet(update, SharedPV.Update::merge);
+        schedule();
+    }
 
-        if (subscribed_for_array)
+    /** Queue the pending update or defer it */
+    private void schedule()
+    {
+        final SharedPV.Update update = pending.get();
+        if (update == null)
+            return;
+        final boolean array = update.value instanceof Array;
+        final SubscribeOptions options = this.options;
+        final int period = array ? options.array_throttle_ms : options.throttle_ms;
+        long delay = last_sent + socket.getThrottle(period) - System.currentTimeMillis();
+        // Shed array updates while socket exceeds its share of the byte budget
+        if (array  &&  socket.isOverBudget())
+            delay = Math.max(delay, options.throttle_ms);
+        if (delay <= 0)
+            socket.updatePending(this, array);
+        else
         {
-            final Disposable sub = subscription.getAndSet(null);
-            if (sub != null)
-            {
-                logger.log(Level.FINE, () -> "Closing non-array subscription for " + name);
-                sub.dispose();
-            }
+            deferred_until = System.currentTimeMillis() + delay;
+            if (deferred.compareAndSet(false, true))
+                UpdateScheduler.schedule(deferred_task, name.hashCode());
+            // else: Already deferred, will then handle the latest update
         }
+    }
 
-        Boolean current_readonly = pv.isReadonly() || !PV_WRITE_SUPPORT;
-        socket.sendUpdate(name, value, last_value, last_readonly, current_readonly);
-        last_value = value;
-        last_readonly = current_readonly;
+    /** @param now Current time (ms since epoch)
+     *  @return <code>true</code> when deferred update has been handled
+     */
+    private boolean handleDeferred(final long now)
+    {
+        if (now < deferred_until)
+            return false;
+        deferred.set(false);
+        schedule();
+        return true;
     }
 
-    /** Handle change in access permissions
-     *  @param readonly Latest access mode
+    /** Get messages for the pending update
+     *
+     *  <p>Called by the socket's {@link MessageSender}
+     *  when it's time to send the update.
+     *
+     *  @param messages Messages to send are added to this list
      */
-    private void handleAccessChanges(final Boolean readonly)
+    void getPendingMessages(final List<Message> messages)
     {
-        Boolean current_readonly = pv.isReadonly() || !PV_WRITE_SUPPORT;
-        socket.sendUpdate(name, last_value, last_value, last_readonly, current_readonly);
-        last_readonly = current_readonly;
+        SharedPV.Update update = pending.getAndSet(null);
+        // The shared PV may send the first update before subscribe() returned
+        if (update == null  ||  disposed)
+            return;
+
+        // Reduce large arrays to the requested resolution
+        final SubscribeOptions options = this.options;
+        if (options.max_points > 0)
+            update = update.getDecimated(options.max_points);
+        // .. and images to the requested view
+        if (options.image_view != null)
+            update = update.getImageView(options.image_view);
+
+        // Send only the changes if the socket received the previous update,
+        // otherwise send everything including the metadata.
+        // Only the previous update is kept, so after skipping updates
+        // a socket receives a full (decimated) update.
+        // Changed array elements are only sent when the client has the previous array.
+        final MessageFormat format = socket.getFormat();
+        final boolean binary = socket.isBinary();
+        final boolean full = sent_sequence.get() != update.sequence - 1;
+        final boolean delta = !full  &&  socket.isDelta();
+        final Message message = full
+                              ? update.getFull(format, binary)
+                              : update.getChanges(format, binary, delta);
+        sent_sequence.set(update.sequence);
+        last_sent = System.currentTimeMillis();
+        if (message == null)
+            return;
+        messages.add(message);
+        socket.addQueuedBytes(message.size());
+        if (binary)
+        {   // Array elements follow in binary frame
+            final Message frame = update.getFrame(delta);
+            if (frame != null)
+            {
+                messages.add(frame);
+                socket.addQueuedBytes(frame.size());
+            }
+        }
     }
 
     /** @return Most recent value or null */
     public VType getLastValue()
     {
-        return last_value;
+        final SharedPV safe_shared = shared;
+        return safe_shared == null ? null : safe_shared.getLastValue();
     }
 
     /** @param new_value Value to write to PV
@@ -160,40 +337,27 @@ public class WebSocketPV
      */
     public void write(Object new_value) throws Exception
     {
-        if (PV_WRITE_SUPPORT)
-            pv.write(new_value);
-        else
-            throw new Exception("PV_WRITE_SUPPORT is disabled");
+        final SharedPV safe_shared = shared;
+        if (safe_shared == null)
+            throw new Exception("PV " + name + " is not connected");
+        safe_shared.write(new_value);
     }
 
     /** Close PV */
     public void dispose()
     {
-        Disposable sub = array_subscription.getAndSet(null);
-        if (sub != null)
-        {
-            logger.log(Level.FINE, () -> "Closing array subscription for " + name);
-            sub.dispose();
-        }
-
-        sub = subscription.getAndSet(null);
-        if (sub != null)
+        // PV may never have been created for invalid PV name,
+        // or not been started, yet
+        final SharedPV safe_shared;
+        synchronized (this)
         {
-            logger.log(Level.FINE, () -> "Closing subscription for " + name);
-            sub.dispose();
+            disposed = true;
+            safe_shared = shared;
+            shared = null;
         }
-
-        sub = subscription_access.getAndSet(null);
-        if (sub != null)
-        {
-            logger.log(Level.FINE, () -> "Closing access subscription for " + name);
-            sub.dispose();
-        }
-
-        // PV may never have been created for invalid PV name...
-        if (pv != null)
-            PVPool.releasePV(pv);
-        pv = null;
+        connected();
+        if (safe_shared != null)
+            PVHub.unsubscribe(safe_shared, this);
     }
 
     @Override
@@ -0,0 +1,144 @@
+// Minimal CBOR (RFC 8949) decoder for messages from the PV web socket
+//
+// Decodes maps, arrays, numbers, strings, booleans and null.
+// Byte strings become Uint8Array copies that start at offset 0,
+// so they can be viewed as Float64Array etc.
+// Tags are skipped, i.e. the tagged item is returned as is.
+
+/** @param buffer ArrayBuffer with one CBOR item
+ *  @return Decoded item
+ */
+function decodeCBOR(buffer)
+{
+    let view = new DataView(buffer);
+    let pos = 0;
+    const text_decoder = new TextDecoder();
+    const BREAK = Symbol("break");
+
+    function readLength(info)
+    {
+        if (info < 24)
+            return info;
+        let len;
+        if (info == 24)
+            len = view.getUint8(pos);
+        else if (info == 25)
+            len = view.getUint16(pos);
+        else if (info == 26)
+            len = view.getUint32(pos);
+        else if (info == 27)
+            len = Number(view.getBigUint64(pos));
+        else if (info == 31)
+            return -1; // Indefinite length
+        else
+            throw new Error("Invalid CBOR length info " + info);
+        pos += 1 << (info - 24);
+        return len;
+    }
+
+    function readBytes(len)
+    {
+        let bytes = new Uint8Array(buffer.slice(pos, pos + len));
+        pos += len;
+        return bytes;
+    }
+
+    function readChunks(major, len)
+    {
+        if (len >= 0)
+            return readBytes(len);
+        // Indefinite length: Concatenate chunks until 'break'
+        let chunks = [], total = 0, chunk;
+        while ((chunk = readItem()) !== BREAK)
+        {
+            if (major == 3)
+                chunk = new TextEncoder().encode(chunk);
+            chunks.push(chunk);
+            total += chunk.length;
+        }
+        let bytes = new Uint8Array(total), offset = 0;
+        for (chunk of chunks)
+        {
+            bytes.set(chunk, offset);
+            offset += chunk.length;
+        }
+        return bytes;
+    }
+
+    function readItem()
+    {
+        let initial = view.getUint8(pos++);
+        let major = initial >> 5, info = initial & 0x1F;
+        if (major == 7)
+        {
+            switch (info)
+            {
+            case 20: return false;
+            case 21: return true;
+            case 22: return null;
+            case 23: return undefined;
+            case 25:
+            {   // Half-precision float
+                let half = view.getUint16(pos);
+                pos += 2;
+                let exp = (half >> 10) & 0x1F, mant = half & 0x3FF, sign = (half & 0x8000) ? -1 : 1;
+                if (exp == 0)
+                    return sign * mant * Math.pow(2, -24);
+                if (exp == 31)
+                    return mant ? NaN : sign * Infinity;
+                return sign * (1 + mant / 1024) * Math.pow(2, exp - 15);
+            }
+            case 26:
+                pos += 4;
+                return view.getFloat32(pos - 4);
+            case 27:
+                pos += 8;
+                return view.getFloat64(pos - 8);
+            case 31:
+                return BREAK;
+            default:
+                if (info < 24)
+                    return undefined;
+                pos += 1; // Simple value in next byte
+                return undefined;
+            }
+        }
+        let len = readLength(info);
+        switch (major)
+        {
+        case 0: return len;
+        case 1: return -1 - len;
+        case 2: return readChunks(major, len);
+        case 3: return text_decoder.decode(readChunks(major, len));
+        case 4:
+        {
+            let array = [];
+            if (len >= 0)
+                for (let i=0; i<len; ++i)
+                    array.push(readItem());
+            else
+                for (let item = readItem(); item !== BREAK; item = readItem())
+                    array.push(item);
+            return array;
+        }
+        case 5:
+        {
+            let map = {};
+            if (len >= 0)
+                for (let i=0; i<len; ++i)
+                {
+                    let key = readItem();
+                    map[key] = readItem();
+                }
+            else
+                for (let key = readItem(); key !== BREAK; key = readItem())
+                    map[key] = readItem();
+            return map;
+        }
+        default: // 6: Tag, return tagged item
+            return readItem();
+        }
+    }
+
+    return readItem();
+}
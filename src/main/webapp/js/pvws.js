@@ -35,6 +35,56 @@ class PVWS
         // Map of PVs to last known value,
         // merging metadata and value updates.
         this.values = {}
+
+        // Receive messages as CBOR instead of JSON text?
+        // Requires cbor.js. Set before calling open().
+        this.cbor = false;
+
+        // Receive array elements as binary frames instead of base64?
+        // Set before subscribing.
+        this.binary = false;
+
+        // Receive only the changed array elements?
+        // Set before subscribing.
+        this.delta = false;
+
+        // Receive updates combined into 'updates' batches?
+        // Batches are unpacked, so message handler still receives
+        // one 'update' per PV. Set before subscribing.
+        this.batch = false;
+
+        // Receive 'progress' messages while subscribed PVs are started?
+        // Set before subscribing.
+        this.progress = false;
+
+        // Throttle period in ms for values and arrays, 0 for server default.
+        // Applies to PVs subscribed while set.
+        this.throttle_ms = 0;
+        this.array_throttle_ms = 0;
+
+        // Deadband for numeric PVs: Number, text like "2%,precision", or null for server default.
+        // Applies to PVs subscribed while set.
+        this.deadband = null;
+
+        // Send statistics of all values within the throttle period as 'stats'?
+        // Applies to PVs subscribed while set.
+        this.aggregate = false;
+
+        // Maximum number of array elements, 0 for all.
+        // Larger arrays are reduced to a min/max envelope.
+        // Applies to PVs subscribed while set.
+        this.max_points = 0;
+
+        // Image region of interest [ x, y, width, height ] or null,
+        // and maximum image width and height, 0 for no limit.
+        // Larger images are binned down to fit.
+        // Applies to PVs subscribed while set.
+        this.roi = null;
+        this.max_width = 0;
+        this.max_height = 0;
+
+        // Map of PV id to PV name, used with binary frames
+        this.ids = {}
     }
 
     /** Open the web socket, i.e. start PV communication */
@@ -42,7 +92,11 @@ class PVWS
     {
         this.connect_handler(false);
         console.log("Opening " + this.url);
-        this.socket = new WebSocket(this.url);
+        if (this.cbor)
+            this.socket = new WebSocket(this.url, "pvws.cbor");
+        else
+            this.socket = new WebSocket(this.url);
+        this.socket.binaryType = "arraybuffer";
         this.socket.onopen = event => this.handleConnection(event);
         this.socket.onmessage = event => this.handleMessage(event.data);
         this.socket.onclose = event => this.handleClose(event);
@@ -85,72 +139,265 @@ class PVWS
     {
         // console.log("Received Message: " + message);
         this.idle = false;
-        let jm = JSON.parse(message);
-        if (jm.type === "update")
+        let jm;
+        if (message instanceof ArrayBuffer)
         {
-            // Decode binary
-            // TODO Assert that we always use LITTLE_ENDIAN
-            if (jm.b64dbl !== undefined)
-            {
-                let bytes = toByteArray(jm.b64dbl);
-                jm.value = new Float64Array(bytes.buffer);
-                // Convert to plain array
-                // When keeping the Float64Array, the JSON representation
-                // will be [ "0": val0, "1": val1, ... ]
-                // instead of plain array [ val0, val1, ... ]
-                jm.value = Array.prototype.slice.call(jm.value);
-                // console.log(jm.value);
-                // console.log(JSON.stringify(jm.value));
-                delete jm.b64dbl;
-            }
-            else if (jm.b64flt !== undefined)
+            // With CBOR, all messages are binary
+            if (this.socket.protocol !== "pvws.cbor")
             {
-                let bytes = toByteArray(jm.b64flt);
-                jm.value = new Float32Array(bytes.buffer);
-                // Convert to plain array
-                jm.value = Array.prototype.slice.call(jm.value);
-                delete jm.b64flt;
+                this.handleBinary(message);
+                return;
             }
-            else if (jm.b64srt !== undefined)
-            {
-                let bytes = toByteArray(jm.b64srt);
-                jm.value = new Int16Array(bytes.buffer);
-                // Convert to plain array
-                jm.value = Array.prototype.slice.call(jm.value);
-                delete jm.b64srt;
-            }
-            else if (jm.b64int !== undefined)
-            {
-                let bytes = toByteArray(jm.b64int);
-                jm.value = new Int32Array(bytes.buffer);
-                // Convert to plain array, if necessary
-                jm.value = Array.prototype.slice.call(jm.value);
-                delete jm.b64int;
-            }
-            else if (jm.b64byt !== undefined)
-            {
-                let bytes = toByteArray(jm.b64byt);
-                jm.value = new Uint8Array(bytes.buffer);
-                // Convert to plain array, if necessary
-                jm.value = Array.prototype.slice.call(jm.value);
-                delete jm.b64byt;
-            }
-                
-            // Merge received data with last known value
-            let value = this.values[jm.pv];
-            // No previous value:
-            // Default to read-only, no data
-            if (value === undefined)
-                value = { pv: jm.pv, readonly: true };
-            
-            // Update cached value with received changes
-            Object.assign(value, jm);
-            this.values[jm.pv] = value;
-            // console.log("Update for PV " + jm.pv + ": " + JSON.stringify(value));
-            this.message_handler(value);
+            jm = decodeCBOR(message);
+        }
+        else
+            jm = JSON.parse(message);
+        if (jm.type === "updates")
+        {   // Batch of messages
+            for (let item of jm.items)
+                this.handleDecoded(item);
         }
         else
+            this.handleDecoded(jm);
+    }
+
+    /** @param jm Decoded message */
+    handleDecoded(jm)
+    {
+        if (jm.type === "update")
+            this.handleUpdate(jm);
+        else
+        {
+            if (jm.type === "history")
+                this.decodeHistory(jm);
             this.message_handler(jm);
+        }
+    }
+
+    /** Decode 'history' message into arrays 'time' (seconds since epoch), 'value', 'severity'
+     *  @param jm Decoded message
+     */
+    decodeHistory(jm)
+    {
+        const severities = [ "NONE", "MINOR", "MAJOR", "INVALID", "UNDEFINED" ];
+        // Copy bytes, which may be a view into a larger CBOR message
+        let bytes = jm.b64time === undefined ? new Uint8Array(0) : this.toBytes(jm.b64time).slice();
+        jm.time = Array.prototype.slice.call(new Float64Array(bytes.buffer));
+        bytes = jm.b64dbl === undefined ? new Uint8Array(0) : this.toBytes(jm.b64dbl).slice();
+        jm.value = Array.prototype.slice.call(new Float64Array(bytes.buffer));
+        bytes = jm.b64sev === undefined ? new Uint8Array(0) : this.toBytes(jm.b64sev);
+        jm.severity = Array.from(bytes, sev => severities[sev]);
+        delete jm.b64time;
+        delete jm.b64dbl;
+        delete jm.b64sev;
+    }
+
+    /** Handle 'update' message
+     *  @param jm Decoded message
+     */
+    handleUpdate(jm)
+    {
+        // Decode binary
+        this.decodeArray(jm);
+        // Decode table columns
+        if (jm.columns !== undefined)
+            for (let column of jm.columns)
+                this.decodeArray(column);
+
+        // Patch changed elements into last known array
+        if (jm.ranges !== undefined)
+        {
+            jm.value = this.applyRanges(jm.pv, jm.size, jm.ranges, jm.value);
+            delete jm.ranges;
+            delete jm.size;
+        }
+            
+        // Merge received data with last known value
+        let value = this.values[jm.pv];
+        // No previous value:
+        // Default to read-only, no data
+        if (value === undefined)
+            value = { pv: jm.pv, readonly: true };
+        
+        // Update cached value with received changes
+        Object.assign(value, jm);
+        this.values[jm.pv] = value;
+
+        // With an 'id', array elements follow in binary frame
+        if (jm.id !== undefined)
+        {
+            this.ids[jm.id] = jm.pv;
+            return;
+        }
+        // console.log("Update for PV " + jm.pv + ": " + JSON.stringify(value));
+        this.message_handler(value);
+    }
+
+    /** Decode array elements of an update or table column into its 'value'
+     *  @param jm Object with 'b64dbl', 'b64int', .. field
+     */
+    decodeArray(jm)
+    {
+        // TODO Assert that we always use LITTLE_ENDIAN
+        if (jm.b64dbl !== undefined)
+        {
+            let bytes = this.toBytes(jm.b64dbl);
+            jm.value = new Float64Array(bytes.buffer);
+            // Convert to plain array
+            // When keeping the Float64Array, the JSON representation
+            // will be [ "0": val0, "1": val1, ... ]
+            // instead of plain array [ val0, val1, ... ]
+            jm.value = Array.prototype.slice.call(jm.value);
+            // console.log(jm.value);
+            // console.log(JSON.stringify(jm.value));
+            delete jm.b64dbl;
+        }
+        else if (jm.b64flt !== undefined)
+        {
+            let bytes = this.toBytes(jm.b64flt);
+            jm.value = new Float32Array(bytes.buffer);
+            // Convert to plain array
+            jm.value = Array.prototype.slice.call(jm.value);
+            delete jm.b64flt;
+        }
+        else if (jm.b64srt !== undefined)
+        {
+            let bytes = this.toBytes(jm.b64srt);
+            jm.value = new Int16Array(bytes.buffer);
+            // Convert to plain array
+            jm.value = Array.prototype.slice.call(jm.value);
+            delete jm.b64srt;
+        }
+        else if (jm.b64int !== undefined)
+        {
+            let bytes = this.toBytes(jm.b64int);
+            jm.value = new Int32Array(bytes.buffer);
+            // Convert to plain array, if necessary
+            jm.value = Array.prototype.slice.call(jm.value);
+            delete jm.b64int;
+        }
+        else if (jm.b64byt !== undefined)
+        {
+            let bytes = this.toBytes(jm.b64byt);
+            jm.value = new Uint8Array(bytes.buffer);
+            // Convert to plain array, if necessary
+            jm.value = Array.prototype.slice.call(jm.value);
+            delete jm.b64byt;
+        }
+        else if (jm.b64lng !== undefined)
+        {
+            let bytes = this.toBytes(jm.b64lng);
+            // Convert BigInt to plain numbers
+            jm.value = Array.from(new BigInt64Array(bytes.buffer), Number);
+            delete jm.b64lng;
+        }
+        else if (jm.b64bit !== undefined)
+        {
+            // Unpack bits, first element in lowest bit
+            let bytes = this.toBytes(jm.b64bit);
+            jm.value = new Array(jm.size);
+            for (let i=0; i<jm.size; ++i)
+                jm.value[i] = (bytes[i >> 3] & (1 << (i & 7))) != 0;
+            delete jm.b64bit;
+            delete jm.size;
+        }
+    }
+
+    /** @param data Array elements as base64 text (JSON) or bytes (CBOR)
+     *  @return Uint8Array
+     */
+    toBytes(data)
+    {
+        if (data instanceof Uint8Array)
+            return data;
+        return toByteArray(data);
+    }
+
+    /** Handle binary frame with array elements
+     *
+     *  <p>24 byte little-endian header:
+     *  int32 id, uint8 type, 3 reserved bytes,
+     *  int64 seconds, int32 nanos, int32 element count,
+     *  followed by the elements.
+     */
+    handleBinary(buffer)
+    {
+        let header = new DataView(buffer, 0, 24);
+        let id = header.getInt32(0, true);
+        let type = header.getUint8(4);
+        let flags = header.getUint8(5);
+        let count = header.getInt32(20, true);
+        let offset = 24;
+        let ranges, size;
+        if (flags & 1)
+        {   // Only changed elements: Number of ranges, array size, ranges
+            let info = new DataView(buffer, 24, 8);
+            let range_count = info.getInt32(0, true);
+            size = info.getInt32(4, true);
+            ranges = new Int32Array(buffer, 32, 2*range_count);
+            offset = 32 + 8*range_count;
+        }
+        let pv = this.ids[id];
+        if (pv === undefined)
+            return;
+        let value = this.values[pv];
+        if (value === undefined)
+            return;
+        let data;
+        if (type == 1)
+            data = new Float64Array(buffer, offset, count);
+        else if (type == 2)
+            data = new Float32Array(buffer, offset, count);
+        else if (type == 3)
+            data = new Int16Array(buffer, offset, count);
+        else if (type == 4)
+            data = new Int32Array(buffer, offset, count);
+        else if (type == 5)
+            data = new Uint8Array(buffer, offset, count);
+        else if (type == 6)
+            data = Array.from(new BigInt64Array(buffer, offset, count), Number);
+        else
+        {
+            console.error("Unknown binary type " + type + " for " + pv);
+            return;
+        }
+        if (ranges !== undefined)
+            value.value = this.applyRanges(pv, size, ranges, data);
+        else // Convert to plain array, see handleMessage
+            value.value = Array.prototype.slice.call(data);
+        let seconds = Number(header.getBigInt64(8, true));
+        if (seconds != 0)
+        {
+            value.seconds = seconds;
+            value.nanos = header.getInt32(16, true);
+        }
+        this.message_handler(value);
+    }
+
+    /** Patch changed array elements into last known array
+     *  @param pv PV name
+     *  @param size Size of complete array
+     *  @param ranges Start index and element count for each range of changed elements
+     *  @param elements Changed elements of all ranges
+     *  @return Patched array
+     */
+    applyRanges(pv, size, ranges, elements)
+    {
+        let value = this.values[pv];
+        if (value === undefined  ||  !Array.isArray(value.value)  ||  value.value.length != size)
+        {
+            console.error("Cannot apply changed elements to " + pv);
+            return value === undefined ? undefined : value.value;
+        }
+        let array = value.value;
+        let j = 0;
+        for (let i=0; i<ranges.length; i+=2)
+        {
+            let start = ranges[i], end = ranges[i] + ranges[i+1];
+            for (let k=start; k<end; ++k)
+                array[k] = elements[j++];
+        }
+        return array;
     }
 
     handleError(event)
@@ -191,7 +438,35 @@ class PVWS
     {
         if (pvs.constructor !== Array)
             pvs = [ pvs ];
-        this.socket.send(JSON.stringify({ type: "subscribe", pvs: pvs }));
+        // Options precede the 'pvs' so the server can subscribe
+        // to each PV as it reads the name
+        let request = { type: "subscribe" };
+        if (this.binary)
+            request.binary = true;
+        if (this.delta)
+            request.delta = true;
+        if (this.batch)
+            request.batch = true;
+        if (this.progress)
+            request.progress = true;
+        if (this.throttle_ms > 0)
+            request.throttle_ms = this.throttle_ms;
+        if (this.array_throttle_ms > 0)
+            request.array_throttle_ms = this.array_throttle_ms;
+        if (this.deadband !== null)
+            request.deadband = this.deadband;
+        if (this.aggregate)
+            request.aggregate = true;
+        if (this.max_points > 0)
+            request.max_points = this.max_points;
+        if (this.roi)
+            request.roi = this.roi;
+        if (this.max_width > 0)
+            request.max_width = this.max_width;
+        if (this.max_height > 0)
+            request.max_height = this.max_height;
+        request.pvs = pvs;
+        this.socket.send(JSON.stringify(request));
     }
 
     /** Un-Subscribe from one or more PVs
@@ -224,6 +499,18 @@ class PVWS
         this.socket.send(JSON.stringify({ type: "write", pv: pv, value: value }));
     }
     
+    /** Request history of a subscribed PV
+     *  @param pv PV name
+     *  @param seconds Number of seconds to get, or undefined for all
+     */
+    history(pv, seconds)
+    {
+        let request = { type: "history", pv: pv };
+        if (seconds !== undefined)
+            request.seconds = seconds;
+        this.socket.send(JSON.stringify(request));
+    }
+
     /** Close the web socket.
      * 
      *  <p>Socket will automatically re-open,
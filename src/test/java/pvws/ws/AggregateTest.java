@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.StringWriter;
+
+import org.epics.vtype.Alarm;
+import org.epics.vtype.Display;
+import org.epics.vtype.Time;
+import org.epics.vtype.VDouble;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/** JUnit test of {@link Aggregate}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class AggregateTest
+{
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /** @param values Values to accumulate
+     *  @return Statistics of the values
+     */
+    private static Aggregate aggregate(final double... values)
+    {
+        final Aggregate.Accumulator accumulator = new Aggregate.Accumulator();
+        for (double value : values)
+            accumulator.add(value);
+        return accumulator.take();
+    }
+
+    /** @param aggregate Statistics
+     *  @return Parsed "stats"
+     *  @throws Exception on error
+     */
+    private JsonNode write(final Aggregate aggregate) throws Exception
+    {
+        final StringWriter text = new StringWriter();
+        try (JsonGenerator g = mapper.getFactory().createGenerator(text))
+        {
+            g.writeStartObject();
+            aggregate.write(g);
+            g.writeEndObject();
+        }
+        return mapper.readTree(text.toString()).get("stats");
+    }
+
+    /** @param value Value
+     *  @param aggregate Statistics, may be <code>null</code>
+     *  @return Update for value with statistics
+     */
+    private static SharedPV.Update update(final double value, final Aggregate aggregate)
+    {
+        final VDouble vtype = VDouble.of(value, Alarm.none(), Time.now(), Display.none());
+        return new SharedPV.Update("test", 1, 1, vtype, null, Boolean.TRUE, null, null, false, 0, aggregate);
+    }
+
+    @Test
+    public void testAccumulator() throws Exception
+    {
+        final Aggregate.Accumulator accumulator = new Aggregate.Accumulator();
+        assertNull(accumulator.take());
+
+        // Only finite values are counted
+        accumulator.add(3.0);
+        accumulator.add(Double.NaN);
+        accumulator.add(1.0);
+        accumulator.add(Double.POSITIVE_INFINITY);
+        accumulator.add(5.0);
+        final JsonNode stats = write(accumulator.take());
+        assertEquals(1.0, stats.get("min").asDouble());
+        assertEquals(5.0, stats.get("max").asDouble());
+        assertEquals(3.0, stats.get("mean").asDouble());
+        assertEquals(3, stats.get("count").asInt());
+
+        // Taking the statistics resets the accumulator
+        assertNull(accumulator.take());
+        accumulator.add(-2.0);
+        assertEquals("min -2.0, max -2.0, mean -2.0, count 1", accumulator.take().toString());
+    }
+
+    @Test
+    public void testMerge() throws Exception
+    {
+        final JsonNode stats = write(Aggregate.merge(aggregate(2.0, 4.0), aggregate(-1.0, 0.0, 10.0)));
+        assertEquals(-1.0, stats.get("min").asDouble());
+        assertEquals(10.0, stats.get("max").asDouble());
+        // Mean is weighted by the count of each period
+        assertEquals(15.0 / 5, stats.get("mean").asDouble(), 1e-12);
+        assertEquals(5, stats.get("count").asInt());
+    }
+
+    @Test
+    public void testMergeUpdates() throws Exception
+    {
+        final SharedPV.Update earlier = update(4.0, aggregate(2.0, 4.0)),
+                              later = update(6.0, aggregate(6.0));
+
+        // Replaced update carries its statistics over to the later one
+        final SharedPV.Update merged = SharedPV.Update.merge(earlier, later);
+        assertSame(later.value, merged.value);
+        assertEquals("min 2.0, max 6.0, mean 4.0, count 3", merged.aggregate.toString());
+
+        // Nothing to merge without statistics
+        assertSame(later, SharedPV.Update.merge(null, later));
+        assertSame(later, SharedPV.Update.merge(update(4.0, null), later));
+        final SharedPV.Update plain = update(6.0, null);
+        assertSame(plain, SharedPV.Update.merge(earlier, plain));
+    }
+}
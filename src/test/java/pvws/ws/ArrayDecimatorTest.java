@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.epics.util.array.ArrayDouble;
+import org.epics.util.array.ArrayInteger;
+import org.epics.util.array.ArrayUShort;
+import org.epics.util.array.ListNumber;
+import org.epics.vtype.Alarm;
+import org.epics.vtype.AlarmSeverity;
+import org.epics.vtype.AlarmStatus;
+import org.epics.vtype.Display;
+import org.epics.vtype.Time;
+import org.epics.vtype.VDoubleArray;
+import org.epics.vtype.VIntArray;
+import org.epics.vtype.VNumberArray;
+import org.epics.vtype.VUShortArray;
+import org.junit.jupiter.api.Test;
+
+/** JUnit test of {@link ArrayDecimator}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class ArrayDecimatorTest
+{
+    private static VNumberArray doubles(final double... values)
+    {
+        return VDoubleArray.of(ArrayDouble.of(values), Alarm.none(), Time.now(), Display.none());
+    }
+
+    @Test
+    public void testSmallArray()
+    {
+        final VNumberArray value = doubles(1, 2, 3, 4);
+        assertNull(ArrayDecimator.decimate(value, 4));
+        assertNull(ArrayDecimator.decimate(value, 10));
+        assertNull(ArrayDecimator.decimate(value, 1));
+    }
+
+    @Test
+    public void testEnvelope()
+    {
+        final double[] values = new double[1000];
+        values[567] = 100.0;
+        values[890] = -50.0;
+        final Alarm alarm = Alarm.of(AlarmSeverity.MINOR, AlarmStatus.RECORD, "HIGH");
+        final Time time = Time.now();
+        final VNumberArray value = VDoubleArray.of(ArrayDouble.of(values), alarm, time, Display.none());
+
+        final VNumberArray result = ArrayDecimator.decimate(value, 100);
+        assertInstanceOf(VDoubleArray.class, result);
+        assertSame(alarm, result.getAlarm());
+        assertSame(time, result.getTime());
+
+        // Spikes are kept
+        final ListNumber data = result.getData();
+        assertEquals(100, data.size());
+        double min = 0, max = 0;
+        for (int i=0; i<data.size(); ++i)
+        {
+            min = Math.min(min, data.getDouble(i));
+            max = Math.max(max, data.getDouble(i));
+        }
+        assertEquals(-50.0, min);
+        assertEquals(100.0, max);
+    }
+
+    @Test
+    public void testOrder()
+    {
+        // One bin: Min and max in the order in which they occur
+        ListNumber data = ArrayDecimator.decimate(doubles(5, 1, 9, 3), 2).getData();
+        assertEquals(1.0, data.getDouble(0));
+        assertEquals(9.0, data.getDouble(1));
+
+        data = ArrayDecimator.decimate(doubles(5, 9, 1, 3), 2).getData();
+        assertEquals(9.0, data.getDouble(0));
+        assertEquals(1.0, data.getDouble(1));
+
+        // NaN is skipped
+        data = ArrayDecimator.decimate(doubles(Double.NaN, 2, 7, Double.NaN), 2).getData();
+        assertEquals(2.0, data.getDouble(0));
+        assertEquals(7.0, data.getDouble(1));
+    }
+
+    @Test
+    public void testElementType()
+    {
+        final VNumberArray ints = VIntArray.of(ArrayInteger.of(4, 8, 15, 16, 23, 42), Alarm.none(), Time.now(), Display.none());
+        final VNumberArray result = ArrayDecimator.decimate(ints, 4);
+        assertInstanceOf(VIntArray.class, result);
+        final ListNumber data = result.getData();
+        assertEquals(4, data.size());
+        assertEquals(4, data.getInt(0));
+        assertEquals(15, data.getInt(1));
+        assertEquals(16, data.getInt(2));
+        assertEquals(42, data.getInt(3));
+
+        // Unsigned values keep their type
+        final VNumberArray ushorts = VUShortArray.of(ArrayUShort.of((short) 1, (short) 0xFFFF, (short) 2, (short) 3),
+                                                     Alarm.none(), Time.now(), Display.none());
+        final VNumberArray unsigned = ArrayDecimator.decimate(ushorts, 2);
+        assertInstanceOf(VUShortArray.class, unsigned);
+        assertEquals(1.0, unsigned.getData().getDouble(0));
+        assertEquals(65535.0, unsigned.getData().getDouble(1));
+    }
+}
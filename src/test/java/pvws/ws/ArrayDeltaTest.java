@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.epics.util.array.ArrayByte;
+import org.epics.util.array.ArrayDouble;
+import org.epics.util.array.ListDouble;
+import org.junit.jupiter.api.Test;
+
+/** JUnit test of {@link ArrayDelta}
+ *  @author Kay Kasemir
+ */
+public class ArrayDeltaTest
+{
+    private static double[] ramp(final int N)
+    {
+        final double[] values = new double[N];
+        for (int i=0; i<N; ++i)
+            values[i] = i;
+        return values;
+    }
+
+    /** @param values Values
+     *  @return List that does not wrap an array
+     */
+    private static ListDouble generic(final double[] values)
+    {
+        return new ListDouble()
+        {
+            @Override
+            public int size()
+            {
+                return values.length;
+            }
+
+            @Override
+            public double getDouble(final int index)
+            {
+                return values[index];
+            }
+        };
+    }
+
+    @Test
+    public void testUnchanged()
+    {
+        final double[] values = ramp(100);
+        values[5] = Double.NaN;
+        assertArrayEquals(new int[0], ArrayDelta.compute(ArrayDouble.of(values), ArrayDouble.of(values.clone()), Vtype2Binary.TYPE_DOUBLE));
+    }
+
+    @Test
+    public void testNoDelta()
+    {
+        final ArrayDouble values = ArrayDouble.of(ramp(100));
+        // No previous value, or size changed
+        assertNull(ArrayDelta.compute(null, values, Vtype2Binary.TYPE_DOUBLE));
+        assertNull(ArrayDelta.compute(ArrayDouble.of(ramp(99)), values, Vtype2Binary.TYPE_DOUBLE));
+
+        // All elements changed, complete array is cheaper
+        final double[] changed = ramp(100);
+        for (int i=0; i<changed.length; ++i)
+            changed[i] += 0.5;
+        assertNull(ArrayDelta.compute(values, ArrayDouble.of(changed), Vtype2Binary.TYPE_DOUBLE));
+    }
+
+    @Test
+    public void testRanges()
+    {
+        final double[] old = ramp(100), values = ramp(100);
+        values[10] = -1;
+        assertArrayEquals(new int[] { 10, 1 }, ArrayDelta.compute(ArrayDouble.of(old), ArrayDouble.of(values), Vtype2Binary.TYPE_DOUBLE));
+
+        // Gap of one double is merged into one range
+        values[12] = -1;
+        assertArrayEquals(new int[] { 10, 3 }, ArrayDelta.compute(ArrayDouble.of(old), ArrayDouble.of(values), Vtype2Binary.TYPE_DOUBLE));
+
+        // Larger gap results in separate ranges
+        values[12] = 12;
+        values[13] = -1;
+        values[14] = -1;
+        values[99] = -1;
+        final int[] ranges = ArrayDelta.compute(ArrayDouble.of(old), ArrayDouble.of(values), Vtype2Binary.TYPE_DOUBLE);
+        assertArrayEquals(new int[] { 10, 1, 13, 2, 99, 1 }, ranges);
+        assertEquals(4, ArrayDelta.countElements(ranges));
+
+        // Same result when comparing element by element
+        assertArrayEquals(ranges, ArrayDelta.compute(generic(old), generic(values), Vtype2Binary.TYPE_DOUBLE));
+    }
+
+    @Test
+    public void testByteGaps()
+    {
+        final byte[] old = new byte[100], values = new byte[100];
+        values[10] = 1;
+        values[15] = 1;
+        values[50] = 1;
+        // Gap of up to 8 bytes is cheaper than another range
+        assertArrayEquals(new int[] { 10, 6, 50, 1 }, ArrayDelta.compute(ArrayByte.of(old), ArrayByte.of(values), Vtype2Binary.TYPE_BYTE));
+    }
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.epics.util.array.ArrayDouble;
+import org.epics.util.array.ListDouble;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark of {@link ArrayPacker}
+ *
+ *  <p>Compares the element loop of the {@link ArrayPacker}
+ *  for an ArrayDouble and for a list that is not backed by an array
+ *  with first copying the double[] out of the ArrayDouble
+ *  and then bulk-copying that into the buffer.
+ *
+ *  <pre>
+ *  mvn -P bench -DskipTests test -Dbench=ArrayPackerBenchmark
+ *  </pre>
+ *
+ *  @author Kay Kasemir
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArrayPackerBenchmark
+{
+    /** Number of array elements */
+    @Param({ "1000", "100000", "1000000" })
+    public int size;
+
+    /** ArrayDouble, backed by a double[] */
+    private ListDouble wrapped;
+
+    /** List without access to a backing array */
+    private ListDouble generic;
+
+    @Setup
+    public void setup()
+    {
+        final double[] values = new double[size];
+        for (int i=0; i<size; ++i)
+            values[i] = Math.sin(i * 0.01);
+        wrapped = ArrayDouble.of(values);
+        generic = new ListDouble()
+        {
+            @Override
+            public int size()
+            {
+                return values.length;
+            }
+
+            @Override
+            public double getDouble(final int index)
+            {
+                return values[index];
+            }
+        };
+    }
+
+    /** @return Bytes packed by bulk copy of a copy of the backing array */
+    @Benchmark
+    public byte[] copyArray()
+    {
+        final double[] array = wrapped.toArray(new double[0]);
+        final ByteBuffer buf = ByteBuffer.allocate(array.length * Double.BYTES);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        final DoubleBuffer dblbuf = buf.asDoubleBuffer();
+        dblbuf.put(array);
+        return buf.array();
+    }
+
+    /** @return Bytes packed element by element */
+    @Benchmark
+    public byte[] arrayLoop()
+    {
+        return ArrayPacker.toBytes(wrapped, Vtype2Binary.TYPE_DOUBLE);
+    }
+
+    /** @return Bytes packed element by element for a list without backing array */
+    @Benchmark
+    public byte[] genericLoop()
+    {
+        return ArrayPacker.toBytes(generic, Vtype2Binary.TYPE_DOUBLE);
+    }
+}
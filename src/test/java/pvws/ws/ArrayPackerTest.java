@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import org.epics.util.array.ArrayBoolean;
+import org.epics.util.array.ArrayByte;
+import org.epics.util.array.ArrayDouble;
+import org.epics.util.array.ArrayInteger;
+import org.epics.util.array.ArrayLong;
+import org.epics.util.array.ListDouble;
+import org.epics.vtype.Alarm;
+import org.epics.vtype.Display;
+import org.epics.vtype.Time;
+import org.epics.vtype.VBooleanArray;
+import org.epics.vtype.VLongArray;
+import org.epics.vtype.VStringArray;
+import org.epics.vtype.VType;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/** JUnit test of {@link ArrayPacker} and the array encodings of {@link Vtype2Json}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class ArrayPackerTest
+{
+    private static ByteBuffer littleEndian(final byte[] bytes)
+    {
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /** @param name PV name
+     *  @param value Value
+     *  @return Parsed JSON of initial update
+     *  @throws Exception on error
+     */
+    private static JsonNode toJson(final String name, final VType value) throws Exception
+    {
+        return new ObjectMapper().readTree(Vtype2Json.toJson(name, value, null, null, Boolean.TRUE));
+    }
+
+    @Test
+    public void testElementSize()
+    {
+        assertEquals(8, ArrayPacker.getElementSize(Vtype2Binary.TYPE_DOUBLE));
+        assertEquals(4, ArrayPacker.getElementSize(Vtype2Binary.TYPE_FLOAT));
+        assertEquals(2, ArrayPacker.getElementSize(Vtype2Binary.TYPE_SHORT));
+        assertEquals(4, ArrayPacker.getElementSize(Vtype2Binary.TYPE_INT));
+        assertEquals(1, ArrayPacker.getElementSize(Vtype2Binary.TYPE_BYTE));
+        assertEquals(8, ArrayPacker.getElementSize(Vtype2Binary.TYPE_LONG));
+    }
+
+    @Test
+    public void testToBytes()
+    {
+        ByteBuffer buf = littleEndian(ArrayPacker.toBytes(ArrayDouble.of(1.5, -2.0), Vtype2Binary.TYPE_DOUBLE));
+        assertEquals(16, buf.remaining());
+        assertEquals(1.5, buf.getDouble(0));
+        assertEquals(-2.0, buf.getDouble(8));
+
+        buf = littleEndian(ArrayPacker.toBytes(ArrayInteger.of(1, -1, 0x12345678), Vtype2Binary.TYPE_INT));
+        assertEquals(12, buf.remaining());
+        assertEquals(-1, buf.getInt(4));
+        assertEquals(0x12345678, buf.getInt(8));
+        // Least significant byte first
+        assertEquals(0x78, buf.get(8));
+
+        // 64 bit values are not truncated
+        buf = littleEndian(ArrayPacker.toBytes(ArrayLong.of(Long.MAX_VALUE, 1L << 40), Vtype2Binary.TYPE_LONG));
+        assertEquals(16, buf.remaining());
+        assertEquals(Long.MAX_VALUE, buf.getLong(0));
+        assertEquals(1L << 40, buf.getLong(8));
+
+        // Bytes are copied
+        final byte[] bytes = { 1, 2, 3 };
+        assertArrayEquals(bytes, ArrayPacker.toBytes(ArrayByte.of(bytes), Vtype2Binary.TYPE_BYTE));
+    }
+
+    @Test
+    public void testConversion()
+    {
+        // List without backing array is copied element by element
+        final ListDouble generic = new ListDouble()
+        {
+            @Override
+            public int size()
+            {
+                return 3;
+            }
+
+            @Override
+            public double getDouble(final int index)
+            {
+                return index * 10.0;
+            }
+        };
+        ByteBuffer buf = littleEndian(ArrayPacker.toBytes(generic, Vtype2Binary.TYPE_DOUBLE));
+        assertEquals(24, buf.remaining());
+        assertEquals(20.0, buf.getDouble(16));
+
+        // Element type of the list need not match the packed type
+        buf = littleEndian(ArrayPacker.toBytes(generic, Vtype2Binary.TYPE_SHORT));
+        assertEquals(6, buf.remaining());
+        assertEquals(10, buf.getShort(2));
+    }
+
+    @Test
+    public void testRanges()
+    {
+        final ArrayInteger data = ArrayInteger.of(0, 1, 2, 3, 4, 5, 6, 7);
+        final ByteBuffer buf = littleEndian(ArrayPacker.toBytes(data, Vtype2Binary.TYPE_INT, new int[] { 1, 2, 6, 1 }));
+        assertEquals(12, buf.remaining());
+        assertEquals(1, buf.getInt(0));
+        assertEquals(2, buf.getInt(4));
+        assertEquals(6, buf.getInt(8));
+
+        // put() advances the position past each range
+        final ByteBuffer all = ByteBuffer.allocate(20).order(ByteOrder.LITTLE_ENDIAN);
+        ArrayPacker.put(all, data, Vtype2Binary.TYPE_INT, new int[] { 0, 1, 4, 4 });
+        assertEquals(20, all.position());
+        assertEquals(0, all.getInt(0));
+        assertEquals(4, all.getInt(4));
+        assertEquals(7, all.getInt(16));
+    }
+
+    @Test
+    public void testLongArray() throws Exception
+    {
+        final VLongArray value = VLongArray.of(ArrayLong.of(-1L, 1L << 40), Alarm.none(), Time.now(), Display.none());
+        final JsonNode json = toJson("longs", value);
+        assertFalse(json.has("b64int"));
+        final ByteBuffer buf = littleEndian(json.get("b64lng").binaryValue());
+        assertEquals(16, buf.remaining());
+        assertEquals(-1L, buf.getLong(0));
+        assertEquals(1L << 40, buf.getLong(8));
+    }
+
+    @Test
+    public void testBooleanArray() throws Exception
+    {
+        // Bits are packed LSB first
+        final boolean[] bits = new boolean[10];
+        bits[0] = bits[3] = bits[9] = true;
+        final VBooleanArray value = VBooleanArray.of(ArrayBoolean.of(bits), Alarm.none(), Time.now());
+        final JsonNode json = toJson("bits", value);
+        assertEquals(10, json.get("size").asInt());
+        final byte[] packed = json.get("b64bit").binaryValue();
+        assertEquals(2, packed.length);
+        assertEquals(0b1001, packed[0]);
+        assertEquals(0b10, packed[1]);
+    }
+
+    @Test
+    public void testStringArray() throws Exception
+    {
+        final VStringArray value = VStringArray.of(List.of("a", "b \"quoted\""), Alarm.none(), Time.now());
+        final JsonNode json = toJson("strings", value);
+        assertFalse(json.has("text"));
+        final JsonNode strings = json.get("value");
+        assertEquals(2, strings.size());
+        assertEquals("a", strings.get(0).asText());
+        assertEquals("b \"quoted\"", strings.get(1).asText());
+    }
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/** JUnit test of {@link ByteBudget}
+ *  @author Kay Kasemir
+ */
+public class ByteBudgetTest
+{
+    @Test
+    public void testShare()
+    {
+        final ByteBudget budget = new ByteBudget();
+        final long total = ByteBudget.getTotal();
+        // Without sockets, one socket gets the complete budget
+        assertEquals(ByteBudget.TOTAL_BYTES, budget.getShare());
+
+        // Share is at least twice the largest message
+        final long large = ByteBudget.TOTAL_BYTES;
+        budget.add(large);
+        assertEquals(2 * large, budget.getShare());
+        assertFalse(budget.isOverShare());
+        budget.add(large);
+        assertFalse(budget.isOverShare());
+        budget.add(1);
+        assertTrue(budget.isOverShare());
+        assertEquals(total + 2 * large + 1, ByteBudget.getTotal());
+
+        budget.close();
+        assertEquals(total, ByteBudget.getTotal());
+        // Changes after close are ignored
+        budget.add(100);
+        assertEquals(0, budget.get());
+        assertEquals(total, ByteBudget.getTotal());
+    }
+
+    @Test
+    public void testSending()
+    {
+        final ByteBudget budget = new ByteBudget();
+        budget.add(1000);
+        budget.add(200);
+        // Message being sent is not queued
+        budget.setSending(1000);
+        assertEquals(1200, budget.get());
+        assertEquals(200, budget.getQueued());
+        budget.setSending(0);
+        budget.add(-1000);
+        assertEquals(200, budget.getQueued());
+        budget.close();
+        assertEquals(0, budget.getQueued());
+    }
+}
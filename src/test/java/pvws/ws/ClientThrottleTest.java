@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/** JUnit test of {@link ClientThrottle}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class ClientThrottleTest
+{
+    /** Time of the last simulated adjustment, starting after the throttles of the test have been created */
+    private long now = System.currentTimeMillis() + 1000;
+
+    /** @param throttle Throttle
+     *  @param send_ms Time it took to send a message
+     *  @param queued_ms Age of the oldest queued entry
+     */
+    private void sent(final ClientThrottle throttle, final long send_ms, final long queued_ms)
+    {
+        now += 1000;
+        throttle.messageSent(send_ms * 1000000, queued_ms, "test", now);
+    }
+
+    @Test
+    public void testGrowOnQueueAge()
+    {
+        final ClientThrottle throttle = new ClientThrottle();
+        assertEquals(SharedPV.THROTTLE_MS, throttle.getThrottle());
+
+        // Queue falling behind doubles the throttle..
+        sent(throttle, 0, ClientThrottle.QUEUE_MS + 1);
+        assertEquals(Math.min(ClientThrottle.MAX_MS, 2 * SharedPV.THROTTLE_MS), throttle.getThrottle());
+
+        // .. but at most once per adjustment period
+        throttle.messageSent(0, ClientThrottle.QUEUE_MS + 1, "test", now + 1);
+        assertEquals(Math.min(ClientThrottle.MAX_MS, 2 * SharedPV.THROTTLE_MS), throttle.getThrottle());
+
+        // .. up to the maximum
+        for (int i=0; i<10; ++i)
+            sent(throttle, 0, ClientThrottle.QUEUE_MS + 1);
+        assertEquals(ClientThrottle.MAX_MS, throttle.getThrottle());
+
+        // Arrays and PVs with requested throttle use the same factor
+        assertEquals(2 * ClientThrottle.MAX_MS, throttle.getThrottle(2 * SharedPV.THROTTLE_MS));
+    }
+
+    @Test
+    public void testGrowOnLatency()
+    {
+        final ClientThrottle throttle = new ClientThrottle();
+        // Average send time, weighted by 1/8, exceeds the latency limit
+        sent(throttle, 8 * ClientThrottle.LATENCY_MS + 8, 0);
+        assertTrue(throttle.getLatency() > ClientThrottle.LATENCY_MS);
+        assertEquals(Math.min(ClientThrottle.MAX_MS, 2 * SharedPV.THROTTLE_MS), throttle.getThrottle());
+    }
+
+    @Test
+    public void testShrink()
+    {
+        final ClientThrottle throttle = new ClientThrottle();
+        for (int i=0; i<10; ++i)
+            sent(throttle, 0, ClientThrottle.QUEUE_MS + 1);
+        assertEquals(ClientThrottle.MAX_MS, throttle.getThrottle());
+
+        // Between the limits, the throttle stays
+        sent(throttle, 0, ClientThrottle.QUEUE_MS);
+        assertEquals(ClientThrottle.MAX_MS, throttle.getThrottle());
+
+        // Client that keeps up gets a gradually shorter throttle..
+        sent(throttle, 0, 0);
+        final int reduced = throttle.getThrottle();
+        assertEquals(ClientThrottle.MAX_MS - ClientThrottle.MAX_MS / 4, reduced);
+
+        // .. back to the default
+        for (int i=0; i<100; ++i)
+            sent(throttle, 0, 0);
+        assertEquals(SharedPV.THROTTLE_MS, throttle.getThrottle());
+    }
+}
@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.text.DecimalFormat;
+
+import org.epics.util.stats.Range;
+import org.epics.vtype.Alarm;
+import org.epics.vtype.AlarmSeverity;
+import org.epics.vtype.AlarmStatus;
+import org.epics.vtype.Display;
+import org.epics.vtype.Time;
+import org.epics.vtype.VDouble;
+import org.epics.vtype.VString;
+import org.junit.jupiter.api.Test;
+
+/** JUnit test of {@link Deadband}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class DeadbandTest
+{
+    /** Display with precision 2 */
+    private static final Display DISPLAY = Display.of(Range.undefined(), Range.undefined(), Range.undefined(), Range.undefined(),
+                                                      "V", new DecimalFormat("0.00"));
+
+    private static final Metadata METADATA = Metadata.of(VDouble.of(0.0, Alarm.none(), Time.now(), DISPLAY), null);
+
+    /** @param value Value
+     *  @return Update for value with same metadata as all other updates
+     */
+    private static SharedPV.Update update(final double value)
+    {
+        return update(VDouble.of(value, Alarm.none(), Time.now(), DISPLAY));
+    }
+
+    private static SharedPV.Update update(final VDouble value)
+    {
+        return new SharedPV.Update("test", 1, 1, value, null, Boolean.TRUE, null, METADATA, false, 0, null);
+    }
+
+    @Test
+    public void testParse() throws Exception
+    {
+        assertSame(Deadband.NONE, Deadband.parse(""));
+        assertSame(Deadband.NONE, Deadband.parse("none"));
+        assertSame(Deadband.NONE, Deadband.parse("0"));
+        assertSame(Deadband.NONE, Deadband.parse(" , "));
+        assertEquals("none", Deadband.NONE.toString());
+
+        assertEquals("0.1", Deadband.parse("0.1").toString());
+        assertEquals("2.0%", Deadband.parse(" 2% ").toString());
+        assertEquals("precision", Deadband.parse("PRECISION").toString());
+        assertEquals("0.5,10.0%,precision", Deadband.parse("precision,10%,0.5").toString());
+
+        assertThrows(Exception.class, () -> Deadband.parse("-1"));
+        assertThrows(Exception.class, () -> Deadband.parse("-5%"));
+        assertThrows(Exception.class, () -> Deadband.parse("fast"));
+        assertThrows(Exception.class, () -> Deadband.parse("%"));
+    }
+
+    @Test
+    public void testGlob()
+    {
+        final String regex = Deadband.globToRegex("SR*:TEMP?.VAL");
+        assertTrue("SR01:TEMP1.VAL".matches(regex));
+        assertTrue("SR:TEMPX.VAL".matches(regex));
+        assertFalse("SR01:TEMP12.VAL".matches(regex));
+        // '.' is not a wildcard
+        assertFalse("SR01:TEMP1xVAL".matches(regex));
+    }
+
+    @Test
+    public void testAbsolute() throws Exception
+    {
+        final Deadband deadband = Deadband.parse("0.5");
+        final SharedPV.Update passed = update(10.0);
+        assertFalse(deadband.suppress(null, passed));
+        assertTrue(deadband.suppress(passed, update(10.4)));
+        assertTrue(deadband.suppress(passed, update(9.5)));
+        assertFalse(deadband.suppress(passed, update(10.6)));
+        assertFalse(deadband.suppress(passed, update(Double.NaN)));
+
+        assertFalse(Deadband.NONE.suppress(passed, update(10.0)));
+    }
+
+    @Test
+    public void testRelative() throws Exception
+    {
+        final Deadband deadband = Deadband.parse("10%");
+        assertTrue(deadband.suppress(update(100.0), update(109.0)));
+        assertFalse(deadband.suppress(update(100.0), update(111.0)));
+        assertTrue(deadband.suppress(update(-100.0), update(-91.0)));
+        assertFalse(deadband.suppress(update(1.0), update(1.2)));
+    }
+
+    @Test
+    public void testPrecision() throws Exception
+    {
+        final Deadband deadband = Deadband.parse("precision");
+        assertTrue(deadband.suppress(update(1.231), update(1.229)));
+        assertFalse(deadband.suppress(update(1.231), update(1.236)));
+
+        // Without known precision, all values pass
+        final SharedPV.Update a = new SharedPV.Update("test", 1, 1, VDouble.of(1.0, Alarm.none(), Time.now(), Display.none()), null, Boolean.TRUE, null, null, false, 0, null),
+                              b = new SharedPV.Update("test", 1, 2, VDouble.of(1.0, Alarm.none(), Time.now(), Display.none()), null, Boolean.TRUE, null, null, false, 0, null);
+        assertFalse(deadband.suppress(a, b));
+    }
+
+    @Test
+    public void testAny() throws Exception
+    {
+        // Passes if outside of any deadband
+        final Deadband deadband = Deadband.parse("1,10%");
+        assertTrue(deadband.suppress(update(5.0), update(5.4)));
+        assertFalse(deadband.suppress(update(5.0), update(5.9)));
+        assertFalse(deadband.suppress(update(50.0), update(51.5)));
+    }
+
+    @Test
+    public void testAlwaysPass() throws Exception
+    {
+        final Deadband deadband = Deadband.parse("100");
+        final SharedPV.Update passed = update(1.0);
+
+        // Change in alarm severity
+        final Alarm minor = Alarm.of(AlarmSeverity.MINOR, AlarmStatus.RECORD, "HIGH");
+        assertFalse(deadband.suppress(passed, update(VDouble.of(2.0, minor, Time.now(), DISPLAY))));
+
+        // Change in access rights
+        final VDouble value = VDouble.of(2.0, Alarm.none(), Time.now(), DISPLAY);
+        assertFalse(deadband.suppress(passed, new SharedPV.Update("test", 1, 2, value, null, Boolean.FALSE, null, METADATA, false, 0, null)));
+
+        // Change in metadata
+        final Metadata other = Metadata.of(value, null);
+        assertFalse(deadband.suppress(passed, new SharedPV.Update("test", 1, 2, value, null, Boolean.TRUE, null, other, true, 0, null)));
+
+        // Statistics
+        final Aggregate.Accumulator accumulator = new Aggregate.Accumulator();
+        accumulator.add(2.0);
+        assertFalse(deadband.suppress(passed, new SharedPV.Update("test", 1, 2, value, null, Boolean.TRUE, null, METADATA, false, 0, accumulator.take())));
+
+        // Not a number
+        final VString text = VString.of("2.0", Alarm.none(), Time.now());
+        assertFalse(deadband.suppress(passed, new SharedPV.Update("test", 1, 2, text, null, Boolean.TRUE, null, null, false, 0, null)));
+    }
+}
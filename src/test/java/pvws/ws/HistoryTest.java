@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Instant;
+
+import org.epics.vtype.Alarm;
+import org.epics.vtype.AlarmSeverity;
+import org.epics.vtype.AlarmStatus;
+import org.epics.vtype.Display;
+import org.epics.vtype.Time;
+import org.epics.vtype.VDouble;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/** JUnit test of {@link History}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class HistoryTest
+{
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /** @param history History
+     *  @param value Value to add
+     *  @param age Age of the value in seconds
+     */
+    private static void add(final History history, final double value, final int age)
+    {
+        final Alarm alarm = value < 0 ? Alarm.of(AlarmSeverity.MAJOR, AlarmStatus.RECORD, "LOLO") : Alarm.none();
+        history.add(VDouble.of(value, alarm, Time.of(Instant.now().minusSeconds(age)), Display.none()));
+    }
+
+    /** @param history History
+     *  @param seconds Seconds to write
+     *  @return Parsed "b64time", "b64dbl", "b64sev"
+     *  @throws Exception on error
+     */
+    private JsonNode write(final History history, final double seconds) throws Exception
+    {
+        final StringWriter text = new StringWriter();
+        try (JsonGenerator g = mapper.getFactory().createGenerator(text))
+        {
+            g.writeStartObject();
+            history.write(g, seconds);
+            g.writeEndObject();
+        }
+        return mapper.readTree(text.toString());
+    }
+
+    private static ByteBuffer decode(final JsonNode json, final String field) throws Exception
+    {
+        return ByteBuffer.wrap(json.get(field).binaryValue()).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test
+    public void testEmpty() throws Exception
+    {
+        final JsonNode json = write(new History(5), 3600);
+        assertEquals(0, json.get("b64time").binaryValue().length);
+        assertEquals(0, json.get("b64dbl").binaryValue().length);
+        assertEquals(0, json.get("b64sev").binaryValue().length);
+    }
+
+    @Test
+    public void testWrapAround() throws Exception
+    {
+        final History history = new History(3);
+        // Add 5 values to ring of 3, the last one with alarm
+        for (int i=1; i<=4; ++i)
+            add(history, i, 10 - i);
+        add(history, -5, 5);
+
+        // Oldest first: 3, 4, -5
+        final JsonNode json = write(history, 3600);
+        final ByteBuffer times = decode(json, "b64time"), values = decode(json, "b64dbl");
+        final byte[] severities = json.get("b64sev").binaryValue();
+        assertEquals(3 * Double.BYTES, times.remaining());
+        assertEquals(3 * Double.BYTES, values.remaining());
+        assertEquals(3, severities.length);
+
+        assertEquals(3.0, values.getDouble(0));
+        assertEquals(4.0, values.getDouble(8));
+        assertEquals(-5.0, values.getDouble(16));
+
+        final double now = System.currentTimeMillis() / 1000.0;
+        assertEquals(now - 7, times.getDouble(0), 1.0);
+        assertEquals(now - 6, times.getDouble(8), 1.0);
+        assertEquals(now - 5, times.getDouble(16), 1.0);
+
+        assertEquals(AlarmSeverity.NONE.ordinal(), severities[0]);
+        assertEquals(AlarmSeverity.NONE.ordinal(), severities[1]);
+        assertEquals(AlarmSeverity.MAJOR.ordinal(), severities[2]);
+    }
+
+    @Test
+    public void testTimeRange() throws Exception
+    {
+        final History history = new History(10);
+        add(history, 1, 100);
+        add(history, 2, 50);
+        add(history, 3, 10);
+        add(history, 4, 1);
+
+        // Only samples within the last seconds
+        ByteBuffer values = decode(write(history, 30), "b64dbl");
+        assertEquals(2 * Double.BYTES, values.remaining());
+        assertEquals(3.0, values.getDouble(0));
+        assertEquals(4.0, values.getDouble(8));
+
+        values = decode(write(history, 75), "b64dbl");
+        assertEquals(3 * Double.BYTES, values.remaining());
+        assertEquals(2.0, values.getDouble(0));
+
+        assertEquals(0, decode(write(history, 0.5), "b64dbl").remaining());
+    }
+
+    @Test
+    public void testIgnoreOlder() throws Exception
+    {
+        // Value that is not newer than the newest sample was already added
+        final History history = new History(10);
+        add(history, 1, 20);
+        add(history, 2, 10);
+        add(history, 3, 15);
+        final ByteBuffer values = decode(write(history, 3600), "b64dbl");
+        assertEquals(2 * Double.BYTES, values.remaining());
+        assertEquals(1.0, values.getDouble(0));
+        assertEquals(2.0, values.getDouble(8));
+    }
+}
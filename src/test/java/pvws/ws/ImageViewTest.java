@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.epics.util.array.ArrayDouble;
+import org.epics.util.array.ArrayShort;
+import org.epics.util.array.ArrayUShort;
+import org.epics.util.array.ListNumber;
+import org.epics.vtype.Alarm;
+import org.epics.vtype.Time;
+import org.epics.vtype.VImage;
+import org.epics.vtype.VImageDataType;
+import org.epics.vtype.VImageType;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/** JUnit test of {@link ImageView}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class ImageViewTest
+{
+    /** @param width Width
+     *  @param height Height
+     *  @return Monochrome image where pixel at x, y has value 10*y + x
+     */
+    private static VImage mono(final int width, final int height)
+    {
+        final double[] pixels = new double[width * height];
+        for (int y=0; y<height; ++y)
+            for (int x=0; x<width; ++x)
+                pixels[y * width + x] = 10 * y + x;
+        return VImage.of(height, width, ArrayDouble.of(pixels),
+                         VImageDataType.pvDouble, VImageType.TYPE_MONO, Alarm.none(), Time.now());
+    }
+
+    private static void assertPixels(final VImage view, final int width, final int height, final double... pixels)
+    {
+        assertEquals(width, view.getWidth());
+        assertEquals(height, view.getHeight());
+        final ListNumber data = view.getData();
+        assertEquals(pixels.length, data.size());
+        for (int i=0; i<pixels.length; ++i)
+            assertEquals(pixels[i], data.getDouble(i), "Pixel " + i);
+    }
+
+    @Test
+    public void testCompleteImage()
+    {
+        final VImage image = mono(4, 3);
+        // Complete image is used as is
+        assertNull(new ImageView(0, 0, 0, 0, 0, 0).apply(image));
+        assertNull(new ImageView(0, 0, 4, 3, 4, 3).apply(image));
+        assertNull(new ImageView(0, 0, 10, 10, 100, 100).apply(image));
+
+        // Unsupported image type
+        final VImage yuv = VImage.of(1, 2, ArrayDouble.of(1, 2, 3, 4),
+                                     VImageDataType.pvDouble, VImageType.TYPE_YUV422, Alarm.none(), Time.now());
+        assertNull(new ImageView(1, 0, 1, 1, 0, 0).apply(yuv));
+
+        // Not enough data for the image size
+        final VImage truncated = VImage.of(3, 4, ArrayDouble.of(1, 2, 3),
+                                           VImageDataType.pvDouble, VImageType.TYPE_MONO, Alarm.none(), Time.now());
+        assertNull(new ImageView(1, 0, 1, 1, 0, 0).apply(truncated));
+
+        // Size that overflows int
+        final VImage huge = VImage.of(65536, 65536, ArrayDouble.of(1, 2, 3),
+                                      VImageDataType.pvDouble, VImageType.TYPE_MONO, Alarm.none(), Time.now());
+        assertNull(new ImageView(1, 0, 1, 1, 0, 0).apply(huge));
+    }
+
+    @Test
+    public void testRegionOfInterest()
+    {
+        final VImage image = mono(4, 3);
+        final VImage view = new ImageView(1, 1, 2, 2, 0, 0).apply(image);
+        assertSame(image.getAlarm(), view.getAlarm());
+        assertSame(image.getTime(), view.getTime());
+        assertPixels(view, 2, 2,
+                     11, 12,
+                     21, 22);
+
+        // Width, height 0 extend to the edge
+        assertPixels(new ImageView(2, 1, 0, 0, 0, 0).apply(image), 2, 2,
+                     12, 13,
+                     22, 23);
+    }
+
+    @Test
+    public void testClipping()
+    {
+        final VImage image = mono(4, 3);
+        // Region extends beyond the edge
+        assertPixels(new ImageView(2, 2, 10, 10, 0, 0).apply(image), 2, 1,
+                     22, 23);
+
+        // Region outside of the image results in the edge pixel
+        assertPixels(new ImageView(100, 100, 5, 5, 0, 0).apply(image), 1, 1,
+                     23);
+    }
+
+    @Test
+    public void testBinning()
+    {
+        final VImage image = mono(4, 4);
+        // Reduce 4x4 to 2x2 by averaging 2x2 bins
+        assertPixels(new ImageView(0, 0, 0, 0, 2, 2).apply(image), 2, 2,
+                     5.5, 7.5,
+                     25.5, 27.5);
+
+        // Same bin size for both directions, based on the max. width
+        assertPixels(new ImageView(0, 0, 0, 0, 1, 0).apply(image), 1, 1,
+                     16.5);
+
+        // Bin of region of interest
+        assertPixels(new ImageView(1, 1, 2, 2, 1, 1).apply(image), 1, 1,
+                     16.5);
+    }
+
+    @Test
+    public void testRGB()
+    {
+        // 2x1 RGB image
+        final VImage image = VImage.of(1, 2, ArrayShort.of((short) 1, (short) 2, (short) 3, (short) 5, (short) 6, (short) 7),
+                                       VImageDataType.pvShort, VImageType.TYPE_RGB1, Alarm.none(), Time.now());
+        VImage view = new ImageView(1, 0, 1, 1, 0, 0).apply(image);
+        assertEquals(VImageType.TYPE_RGB1, view.getVImageType());
+        assertPixels(view, 1, 1, 5, 6, 7);
+
+        // Channels are averaged separately, data type is preserved
+        view = new ImageView(0, 0, 0, 0, 1, 1).apply(image);
+        assertEquals(VImageDataType.pvShort, view.getDataType());
+        assertInstanceOf(ArrayShort.class, view.getData());
+        assertPixels(view, 1, 1, 3, 4, 5);
+    }
+
+    @Test
+    public void testUnsigned()
+    {
+        final VImage image = VImage.of(1, 2, ArrayUShort.of((short) 0xFFFF, (short) 0xFFFD),
+                                       VImageDataType.pvUShort, VImageType.TYPE_MONO, Alarm.none(), Time.now());
+        final VImage view = new ImageView(0, 0, 0, 0, 1, 1).apply(image);
+        assertEquals(VImageDataType.pvUShort, view.getDataType());
+        // Bits of the unsigned average
+        assertEquals((short) 0xFFFE, view.getData().getShort(0));
+    }
+
+    @Test
+    public void testEquality()
+    {
+        final ImageView view = new ImageView(1, 2, 3, 4, 5, 6);
+        assertEquals(view, new ImageView(1, 2, 3, 4, 5, 6));
+        assertEquals(view.hashCode(), new ImageView(1, 2, 3, 4, 5, 6).hashCode());
+        assertNotEquals(view, new ImageView(1, 2, 3, 4, 5, 0));
+        assertNotEquals(view, new ImageView(0, 2, 3, 4, 5, 6));
+    }
+
+    @Test
+    public void testOptions() throws Exception
+    {
+        final ObjectMapper mapper = new ObjectMapper();
+        SubscribeOptions options = SubscribeOptions.fromJson(mapper.readTree("{ \"roi\": [ 1, 2, 3, 4 ], \"max_width\": 100 }"));
+        assertEquals(new ImageView(1, 2, 3, 4, 100, 0), options.image_view);
+
+        options = SubscribeOptions.fromJson(mapper.readTree("{ \"max_points\": 10 }"));
+        assertNull(options.image_view);
+
+        for (String roi : new String[] { "[ 1, 2, 3 ]", "[ -1, 0, 10, 10 ]", "[ 0.5, 0, 10, 10 ]", "[ \"a\", 0, 10, 10 ]", "42" })
+            assertThrows(Exception.class, () -> SubscribeOptions.fromJson(mapper.readTree("{ \"roi\": " + roi + " }")), roi);
+    }
+}
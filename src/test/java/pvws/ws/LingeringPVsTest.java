@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/** JUnit test of {@link LingeringPVs}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class LingeringPVsTest
+{
+    private final SharedPV a = new SharedPV("loc://a"),
+                           b = new SharedPV("loc://b"),
+                           c = new SharedPV("loc://c");
+
+    @Test
+    public void testDisabled()
+    {
+        assertFalse(new LingeringPVs(0, 10).isEnabled());
+        assertFalse(new LingeringPVs(1000, 0).isEnabled());
+        assertTrue(new LingeringPVs(1000, 10).isEnabled());
+    }
+
+    @Test
+    public void testEviction()
+    {
+        final LingeringPVs lingering = new LingeringPVs(1000, 2);
+        assertNull(lingering.add(a, 0));
+        assertNull(lingering.add(b, 10));
+        assertEquals(2, lingering.size());
+
+        // Least recently used PV is evicted when there are too many
+        assertSame(a, lingering.add(c, 20));
+        assertEquals(2, lingering.size());
+        assertNull(lingering.get(a.getKey()));
+
+        // Re-used PV no longer lingers
+        assertSame(b, lingering.get(b.getKey()));
+        assertSame(b, lingering.remove(b.getKey()));
+        assertNull(lingering.remove(b.getKey()));
+        assertEquals(1, lingering.size());
+
+        // When it lingers again, it's the most recently used
+        assertNull(lingering.add(b, 30));
+        assertSame(c, lingering.add(a, 40));
+    }
+
+    @Test
+    public void testExpiry()
+    {
+        final LingeringPVs lingering = new LingeringPVs(1000, 10);
+        lingering.add(a, 0);
+        lingering.add(b, 500);
+        lingering.add(c, 900);
+        assertTrue(lingering.removeExpired(999).isEmpty());
+
+        List<SharedPV> expired = lingering.removeExpired(1500);
+        assertEquals(List.of(a, b), expired);
+        assertEquals(1, lingering.size());
+        assertNull(lingering.get(a.getKey()));
+
+        // Re-used PV does not expire
+        lingering.remove(c.getKey());
+        expired = lingering.removeExpired(5000);
+        assertTrue(expired.isEmpty());
+        assertEquals(0, lingering.size());
+    }
+}
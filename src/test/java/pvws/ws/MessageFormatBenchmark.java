@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import java.util.concurrent.TimeUnit;
+
+import org.epics.util.array.ArrayDouble;
+import org.epics.vtype.Alarm;
+import org.epics.vtype.Display;
+import org.epics.vtype.Time;
+import org.epics.vtype.VDouble;
+import org.epics.vtype.VDoubleArray;
+import org.epics.vtype.VType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark of the {@link MessageFormat}s
+ *
+ *  <p>Encodes the first update of a PV with all metadata
+ *  and a following update with only the changes,
+ *  for a scalar and a 1000 element array.
+ *  The time per update is measured by JMH,
+ *  the bytes per update are printed when the benchmark starts.
+ *
+ *  <pre>
+ *  mvn -P bench -DskipTests test -Dbench=MessageFormatBenchmark
+ *  </pre>
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageFormatBenchmark
+{
+    /** Format to encode */
+    @Param({ "JSON", "CBOR" })
+    public String format;
+
+    /** "scalar" or "array" */
+    @Param({ "scalar", "array" })
+    public String value;
+
+    private MessageFormat message_format;
+    private VType first, second;
+    private Metadata metadata;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        message_format = MessageFormat.valueOf(format);
+        if (value.equals("array"))
+        {
+            final double[] values = new double[1000];
+            for (int i=0; i<values.length; ++i)
+                values[i] = Math.sin(i * 0.01);
+            first = VDoubleArray.of(ArrayDouble.of(values), Alarm.none(), Time.now(), Display.none());
+            values[0] = 1.0;
+            second = VDoubleArray.of(ArrayDouble.of(values), Alarm.none(), Time.now(), Display.none());
+        }
+        else
+        {
+            first = VDouble.of(3.14, Alarm.none(), Time.now(), Display.none());
+            second = VDouble.of(3.15, Alarm.none(), Time.now(), Display.none());
+        }
+        metadata = Metadata.of(first, null);
+
+        System.out.println(format + " " + value + ": " + full().length + " bytes for full update, " +
+                           changes().length + " bytes for changes");
+    }
+
+    /** @return First update with metadata
+     *  @throws Exception on error
+     */
+    @Benchmark
+    public byte[] full() throws Exception
+    {
+        return Vtype2Json.toJson("ramp", first, null, null, Boolean.TRUE,
+                                 0, null, 0, metadata, null, message_format);
+    }
+
+    /** @return Following update with changes
+     *  @throws Exception on error
+     */
+    @Benchmark
+    public byte[] changes() throws Exception
+    {
+        return Vtype2Json.toJson("ramp", second, first, Boolean.TRUE, Boolean.TRUE,
+                                 0, null, 0, null, null, message_format);
+    }
+}
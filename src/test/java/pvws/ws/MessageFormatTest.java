@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+/** JUnit test of {@link MessageFormat}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class MessageFormatTest
+{
+    /** @param format Message format
+     *  @return Mapper for that format
+     */
+    private static ObjectMapper getMapper(final MessageFormat format)
+    {
+        return format == MessageFormat.JSON ? new ObjectMapper() : new ObjectMapper(new CBORFactory());
+    }
+
+    /** @param format Message format
+     *  @param mapper Mapper for that format
+     *  @param count Number of items
+     *  @return Batch of 'update' messages for PVs "pv0", "pv1", ...
+     *  @throws Exception on error
+     */
+    private static Message createBatch(final MessageFormat format, final ObjectMapper mapper, final int count) throws Exception
+    {
+        final List<Message> items = new ArrayList<>();
+        for (int i=0; i<count; ++i)
+            items.add(format.toMessage(mapper.writeValueAsBytes(Map.of("type", "update", "pv", "pv" + i, "value", i))));
+        return format.batch(items);
+    }
+
+    @Test
+    public void testBatch() throws Exception
+    {
+        for (MessageFormat format : MessageFormat.values())
+        {
+            final ObjectMapper mapper = getMapper(format);
+            final Message batch = createBatch(format, mapper, 3);
+            assertEquals(format == MessageFormat.JSON, batch.isText());
+
+            final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            batch.writeTo(buf);
+            final JsonNode json = mapper.readTree(buf.toByteArray());
+            assertEquals("updates", json.get("type").asText());
+
+            // Items are kept in order
+            final JsonNode items = json.get("items");
+            assertEquals(3, items.size());
+            for (int i=0; i<3; ++i)
+            {
+                assertEquals("pv" + i, items.get(i).get("pv").asText());
+                assertEquals(i, items.get(i).get("value").asInt());
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.epics.vtype.Alarm;
+import org.epics.vtype.Display;
+import org.epics.vtype.Time;
+import org.epics.vtype.VDouble;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/** JUnit test of {@link Outbox}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class OutboxTest
+{
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /** Socket for the PVs, without a session, so the test adds PVs to the outbox */
+    private final WebSocket socket = new WebSocket();
+
+    private long sequence = 0;
+
+    @AfterEach
+    public void dispose()
+    {
+        socket.dispose();
+    }
+
+    /** @param name PV name
+     *  @param value Value
+     *  @return PV with that value pending
+     */
+    private WebSocketPV createPV(final String name, final double value)
+    {
+        final WebSocketPV pv = new WebSocketPV(name, socket);
+        update(pv, value);
+        return pv;
+    }
+
+    /** @param pv PV to update
+     *  @param value Value of the pending update
+     */
+    private void update(final WebSocketPV pv, final double value)
+    {
+        final VDouble vtype = VDouble.of(value, Alarm.none(), Time.now(), Display.none());
+        pv.handleUpdate(new SharedPV.Update(pv.getName(), 1, ++sequence, vtype, null, Boolean.TRUE, null,
+                                            Metadata.of(vtype, null), true, 0, null));
+    }
+
+    /** @param message Message
+     *  @return Parsed message
+     *  @throws Exception on error
+     */
+    private JsonNode parse(final Message message) throws Exception
+    {
+        return mapper.readTree(message.toString());
+    }
+
+    /** @param outbox Outbox
+     *  @return Names of PVs in order of messages taken from outbox, "control" for control messages
+     *  @throws Exception on error
+     */
+    private List<String> pollAll(final Outbox outbox) throws Exception
+    {
+        final List<String> names = new ArrayList<>();
+        Message message;
+        while ((message = outbox.poll()) != null)
+            names.add(parse(message).path("pv").asText("control"));
+        return names;
+    }
+
+    @Test
+    public void testControlFirst() throws Exception
+    {
+        final Outbox outbox = new Outbox(10);
+        outbox.offerUpdate(createPV("scalar", 1), false);
+        outbox.offerUpdate(createPV("array", 2), true);
+        final Message control = Message.text("{ \"type\": \"error\" }");
+        assertTrue(outbox.offer(control));
+        assertArrayEquals(new int[] { 1, 1, 1 }, outbox.getDepths());
+
+        // Control message, then scalar, then array
+        assertSame(control, outbox.poll());
+        assertEquals(List.of("scalar", "array"), pollAll(outbox));
+        assertTrue(outbox.isEmpty());
+    }
+
+    @Test
+    public void testConflation() throws Exception
+    {
+        final Outbox outbox = new Outbox(10);
+        final WebSocketPV pv = createPV("pv", 1);
+        outbox.offerUpdate(pv, false);
+        update(pv, 2);
+        outbox.offerUpdate(pv, false);
+        update(pv, 3);
+        outbox.offerUpdate(pv, false);
+
+        // PV is queued once and sends its latest value
+        assertEquals(1, outbox.size());
+        final JsonNode json = parse(outbox.poll());
+        assertEquals("pv", json.get("pv").asText());
+        assertEquals(3.0, json.get("value").asDouble());
+        assertNull(outbox.poll());
+
+        // Later update queues the PV again
+        update(pv, 4);
+        outbox.offerUpdate(pv, false);
+        assertEquals(1, outbox.size());
+        assertEquals(4.0, parse(outbox.poll()).get("value").asDouble());
+    }
+
+    @Test
+    public void testLanes() throws Exception
+    {
+        final Outbox outbox = new Outbox(10);
+        for (int i=0; i<2; ++i)
+            outbox.offerUpdate(createPV("array" + i, i), true);
+        for (int i=0; i<6; ++i)
+            outbox.offerUpdate(createPV("scalar" + i, i), false);
+
+        // Arrays are not starved by scalars
+        assertEquals(List.of("scalar0", "scalar1", "scalar2", "scalar3", "array0",
+                             "scalar4", "scalar5", "array1"),
+                     pollAll(outbox));
+    }
+
+    @Test
+    public void testCapacity() throws Exception
+    {
+        final Outbox outbox = new Outbox(2);
+        assertTrue(outbox.offer(Message.text("{}")));
+        assertTrue(outbox.offer(Message.text("{}")));
+        assertFalse(outbox.offer(Message.text("{}")));
+
+        // PV updates are not limited by the capacity
+        outbox.offerUpdate(createPV("pv", 1), false);
+        assertEquals(3, outbox.size());
+    }
+
+    @Test
+    public void testClear() throws Exception
+    {
+        final Outbox outbox = new Outbox(10);
+        final WebSocketPV pv = createPV("pv", 1);
+        outbox.offerUpdate(pv, false);
+        outbox.offer(Message.text("{}"));
+        outbox.clear();
+        assertTrue(outbox.isEmpty());
+        assertEquals(0, outbox.getAge());
+
+        // Cleared PV can be queued again
+        update(pv, 2);
+        outbox.offerUpdate(pv, false);
+        assertEquals(1, outbox.size());
+    }
+}
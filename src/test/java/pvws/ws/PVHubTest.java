@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+
+import org.junit.jupiter.api.Test;
+import org.phoebus.pv.PV;
+import org.phoebus.pv.PVPool;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/** JUnit test of {@link PVHub}
+ *
+ *  <p>Uses local PVs, which do not need a network.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class PVHubTest
+{
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /** @param history History
+     *  @return Values in the history
+     *  @throws Exception on error
+     */
+    private double[] getValues(final History history) throws Exception
+    {
+        final StringWriter text = new StringWriter();
+        try (JsonGenerator g = mapper.getFactory().createGenerator(text))
+        {
+            g.writeStartObject();
+            history.write(g, 3600);
+            g.writeEndObject();
+        }
+        final byte[] bytes = mapper.readTree(text.toString()).get("b64dbl").binaryValue();
+        final DoubleBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+        final double[] values = new double[buffer.remaining()];
+        buffer.get(values);
+        return values;
+    }
+
+    @Test
+    public void testSharedHistory() throws Exception
+    {
+        History.configure("loc://hub_history*=10");
+        final String name = "loc://hub_history(1)";
+        final WebSocket socket = new WebSocket();
+        final WebSocketPV fast_pv = new WebSocketPV(name, socket),
+                          slow_pv = new WebSocketPV(name, socket);
+        try
+        {
+            // Two shared PVs for different throttles..
+            final SharedPV fast = PVHub.subscribe(name, 100, 100, false, fast_pv);
+            final SharedPV slow = PVHub.subscribe(name, 500, 500, false, slow_pv);
+            assertNotSame(fast, slow);
+
+            // .. add each received value just once to the same history
+            final History history = PVHub.getHistory(name);
+            assertNotNull(history);
+            final PV pv = PVPool.getPV(name);
+            try
+            {
+                pv.write(2.0);
+                pv.write(3.0);
+            }
+            finally
+            {
+                PVPool.releasePV(pv);
+            }
+            assertArrayEquals(new double[] { 1.0, 2.0, 3.0 }, getValues(history));
+
+            // History remains while one of the shared PVs is used
+            PVHub.unsubscribe(fast, fast_pv);
+            assertSame(history, PVHub.getHistory(name));
+            PVHub.unsubscribe(slow, slow_pv);
+            if (PVHub.LINGER_MS <= 0)
+                assertNull(PVHub.getHistory(name));
+        }
+        finally
+        {
+            socket.dispose();
+        }
+    }
+
+    @Test
+    public void testLingerCounts() throws Exception
+    {
+        final String name = "loc://hub_counts(1)";
+        final WebSocket socket = new WebSocket();
+        final WebSocketPV pv1 = new WebSocketPV(name, socket),
+                          pv2 = new WebSocketPV(name, socket);
+        try
+        {
+            final long hits = PVHub.getLingerHits(), misses = PVHub.getLingerMisses();
+
+            // Without a shared PV, subscribeCached() leaves counting to subscribe()
+            assertNull(PVHub.subscribeCached(name, 100, 100, false, pv1));
+            assertEquals(misses, PVHub.getLingerMisses());
+
+            // New shared PV is a miss, subscribing to the active one is not counted
+            final SharedPV shared = PVHub.subscribe(name, 100, 100, false, pv1);
+            assertSame(shared, PVHub.subscribe(name, 100, 100, false, pv2));
+            assertEquals(hits, PVHub.getLingerHits());
+            assertEquals(misses + 1, PVHub.getLingerMisses());
+
+            PVHub.unsubscribe(shared, pv2);
+            PVHub.unsubscribe(shared, pv1);
+        }
+        finally
+        {
+            socket.dispose();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/** JUnit test of {@link RequestParser}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class RequestParserTest
+{
+    /** Handler that logs what it's called with */
+    private static class Log implements RequestParser.Handler
+    {
+        final List<String> calls = new ArrayList<>();
+        String text;
+
+        @Override
+        public void handlePV(final ObjectNode request, final String name)
+        {
+            calls.add(request.get("type").asText() + " " + name);
+        }
+
+        @Override
+        public void handleRequest(final ObjectNode request, final List<String> pvs, final String text)
+        {
+            calls.add(request + " " + pvs);
+            this.text = text;
+        }
+    }
+
+    /** @param parser Parser
+     *  @param parts Parts of one message
+     *  @throws Exception on error
+     */
+    private static void parse(final RequestParser parser, final String... parts) throws Exception
+    {
+        for (int i=0; i<parts.length; ++i)
+            parser.parse(parts[i], i == parts.length-1);
+    }
+
+    @Test
+    public void testTypeFirst() throws Exception
+    {
+        final Log log = new Log();
+        final RequestParser parser = new RequestParser(log);
+
+        // PVs are handled one by one while the message arrives
+        parser.parse("{ \"type\": \"subscribe\", \"pvs\": [ \"a\", \"b", false);
+        assertEquals(List.of("subscribe a"), log.calls);
+        parser.parse("c\", \"d\" ], \"throttle_ms\": 500 }", true);
+        assertEquals(List.of("subscribe a",
+                             "subscribe bc",
+                             "subscribe d",
+                             "{\"type\":\"subscribe\",\"throttle_ms\":500} []"),
+                     log.calls);
+        assertEquals("{ \"type\": \"subscribe\", \"pvs\": [ \"a\", \"bc\", \"d\" ], \"throttle_ms\": 500 }", log.text);
+    }
+
+    @Test
+    public void testTypeLast() throws Exception
+    {
+        final Log log = new Log();
+        final RequestParser parser = new RequestParser(log);
+
+        // PVs are collected until the type is known
+        parse(parser, "{ \"pvs\": [ \"x\", \"y\" ], ", "\"roi\": [ 1, 2, { \"a\": [ true, null ] } ], \"type\": \"clear\" }");
+        assertEquals(List.of("{\"roi\":[1,2,{\"a\":[true,null]}],\"type\":\"clear\"} [x, y]"), log.calls);
+
+        // Request without PVs
+        log.calls.clear();
+        parse(parser, "{ \"type\": \"list\" }");
+        assertEquals(List.of("{\"type\":\"list\"} null"), log.calls);
+    }
+
+    @Test
+    public void testSurrogates() throws Exception
+    {
+        final Log log = new Log();
+        final RequestParser parser = new RequestParser(log);
+
+        // Message part ends in the middle of a surrogate pair
+        final String name = "pv\uD83D\uDE00";
+        parse(parser, "{ \"type\": \"subscribe\", \"pvs\": [ \"pv\uD83D", "\uDE00\" ] }");
+        assertEquals("subscribe " + name, log.calls.get(0));
+    }
+
+    @Test
+    public void testText() throws Exception
+    {
+        final Log log = new Log();
+        final RequestParser parser = new RequestParser(log);
+
+        // Text of long request is not kept
+        final StringBuilder pvs = new StringBuilder();
+        for (int i=0; i<2000; ++i)
+            pvs.append(", \"pv").append(i).append('"');
+        parse(parser, "{ \"type\": \"subscribe\", \"pvs\": [ \"pv\"", pvs.toString(), " ] }");
+        assertEquals(2002, log.calls.size());
+        assertNull(log.text);
+        assertEquals("(long message)", parser.getText());
+
+        // Text of long 'echo' is kept, even with the type at the end
+        final String body = "x".repeat(10000);
+        parse(parser, "{ \"body\": \"", body, "\", \"type\": \"echo\" }");
+        assertEquals("{ \"body\": \"" + body + "\", \"type\": \"echo\" }", log.text);
+    }
+
+    @Test
+    public void testErrors() throws Exception
+    {
+        final Log log = new Log();
+        final RequestParser parser = new RequestParser(log);
+
+        assertThrows(Exception.class, () -> parse(parser, "{ \"type\": \"subscribe\", \"pvs\": [ \"a\" "));
+        assertThrows(Exception.class, () -> parse(parser, "[ 1, 2 ]"));
+        assertThrows(Exception.class, () -> parse(parser, "{ \"pvs\": \"a\" }"));
+        assertThrows(Exception.class, () -> parse(parser, "{ \"pvs\": [ [ \"a\" ] ] }"));
+
+        // After an error, the rest of the message is ignored
+        log.calls.clear();
+        assertThrows(Exception.class, () -> parser.parse("{ \"type\": \"subscribe\", \"pvs\": 42, ", false));
+        parser.parse("\"more\": ", false);
+        parser.parse("\"ignored\" }", true);
+        assertEquals(List.of(), log.calls);
+
+        // .. and the next message is parsed
+        parse(parser, "{ \"type\": \"subscribe\", \"pvs\": [ \"ok\" ] }");
+        assertEquals("subscribe ok", log.calls.get(0));
+    }
+}
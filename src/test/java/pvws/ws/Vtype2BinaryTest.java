@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2026 UT-Battelle, LLC.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the LICENSE
+ * which accompanies this distribution
+ ******************************************************************************/
+package pvws.ws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Instant;
+
+import org.epics.util.array.ArrayDouble;
+import org.epics.util.array.ArrayInteger;
+import org.epics.util.array.ArrayShort;
+import org.epics.util.array.ArrayUShort;
+import org.epics.vtype.Alarm;
+import org.epics.vtype.Display;
+import org.epics.vtype.Time;
+import org.epics.vtype.VDouble;
+import org.epics.vtype.VDoubleArray;
+import org.epics.vtype.VImage;
+import org.epics.vtype.VImageDataType;
+import org.epics.vtype.VImageType;
+import org.epics.vtype.VIntArray;
+import org.epics.vtype.VShortArray;
+import org.junit.jupiter.api.Test;
+
+/** JUnit test of the {@link Vtype2Binary} frame layout
+ *  @author Kay Kasemir
+ */
+public class Vtype2BinaryTest
+{
+    private static final Time TIME = Time.of(Instant.ofEpochSecond(1234, 567));
+
+    @Test
+    public void testHeader()
+    {
+        final VDoubleArray value = VDoubleArray.of(ArrayDouble.of(1.0, 2.0, 3.0), Alarm.none(), TIME, Display.none());
+        final ByteBuffer frame = Vtype2Binary.toFrame(42, value);
+
+        assertEquals(ByteOrder.LITTLE_ENDIAN, frame.order());
+        assertEquals(Vtype2Binary.HEADER_SIZE + 3 * Double.BYTES, frame.remaining());
+        assertEquals(42, frame.getInt(0));
+        assertEquals(Vtype2Binary.TYPE_DOUBLE, frame.get(4));
+        assertEquals(0, frame.get(5));
+        assertEquals(0, frame.getShort(6));
+        assertEquals(1234L, frame.getLong(8));
+        assertEquals(567, frame.getInt(16));
+        assertEquals(3, frame.getInt(20));
+        assertEquals(1.0, frame.getDouble(24));
+        assertEquals(2.0, frame.getDouble(32));
+        assertEquals(3.0, frame.getDouble(40));
+    }
+
+    @Test
+    public void testElementTypes()
+    {
+        final VShortArray shorts = VShortArray.of(ArrayShort.of((short) 1, (short) -2), Alarm.none(), TIME, Display.none());
+        ByteBuffer frame = Vtype2Binary.toFrame(1, shorts);
+        assertEquals(Vtype2Binary.TYPE_SHORT, frame.get(4));
+        assertEquals(Vtype2Binary.HEADER_SIZE + 2 * Short.BYTES, frame.remaining());
+        assertEquals(-2, frame.getShort(26));
+
+        final VImage image = VImage.of(1, 2, ArrayUShort.of((short) 7, (short) 8),
+                                       VImageDataType.pvUShort, VImageType.TYPE_MONO, Alarm.none(), TIME);
+        frame = Vtype2Binary.toFrame(2, image);
+        assertEquals(Vtype2Binary.TYPE_SHORT, frame.get(4));
+        assertEquals(2, frame.getInt(20));
+        assertEquals(8, frame.getShort(26));
+
+        // Scalars are not sent as binary frames
+        assertNull(Vtype2Binary.toFrame(3, VDouble.of(3.14, Alarm.none(), TIME, Display.none())));
+    }
+
+    @Test
+    public void testDelta()
+    {
+        final VIntArray value = VIntArray.of(ArrayInteger.of(10, 11, 12, 13, 14), Alarm.none(), TIME, Display.none());
+        final ByteBuffer frame = Vtype2Binary.toFrame(5, value, new int[] { 1, 2 });
+
+        assertEquals(Vtype2Binary.TYPE_INT, frame.get(4));
+        assertEquals(Vtype2Binary.FLAG_DELTA, frame.get(5));
+        // Number of elements in all ranges
+        assertEquals(2, frame.getInt(20));
+        // Number of ranges, size of complete array, ranges
+        assertEquals(1, frame.getInt(24));
+        assertEquals(5, frame.getInt(28));
+        assertEquals(1, frame.getInt(32));
+        assertEquals(2, frame.getInt(36));
+        // Elements
+        assertEquals(11, frame.getInt(40));
+        assertEquals(12, frame.getInt(44));
+        assertEquals(48, frame.remaining());
+    }
+}